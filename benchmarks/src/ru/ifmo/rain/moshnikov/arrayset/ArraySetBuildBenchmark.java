@@ -0,0 +1,53 @@
+package ru.ifmo.rain.moshnikov.arrayset;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+// Building a set from a list of random numbers (about one in ten a duplicate), already sorted or shuffled,
+// against the TreeSet the constructors used to go through. The GC profiler of WalkBenchmarks shows the memory.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ArraySetBuildBenchmark {
+
+    @Param({"100000", "10000000"})
+    public int size;
+
+    @Param({"shuffled", "sorted"})
+    public String input;
+
+    private List<Integer> elements;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(size);
+        elements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            elements.add(random.nextInt(10 * size));
+        }
+        if ("sorted".equals(input)) {
+            Collections.sort(elements);
+        }
+    }
+
+    @Benchmark
+    public ArraySet<Integer> arraySet() {
+        return new ArraySet<>((Collection<Integer>) elements);
+    }
+
+    @Benchmark
+    public List<Integer> treeSet() {
+        return List.copyOf(new TreeSet<>(elements));
+    }
+
+}
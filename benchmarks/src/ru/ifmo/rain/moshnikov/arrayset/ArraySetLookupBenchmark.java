@@ -0,0 +1,70 @@
+package ru.ifmo.rain.moshnikov.arrayset;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Random lookups in a set far larger than the caches: the even numbers 0, 2, ..., 2 * (size - 1), queried with
+// random numbers of the same range, so half of the queries miss and floor lands between two elements.
+// 10^8 boxed elements take a few gigabytes, hence the heap.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ArraySetLookupBenchmark {
+
+    private static final int QUERIES = 1 << 16;
+
+    @Param({"1000000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"sorted", "eytzinger"})
+    public String layout;
+
+    private ArraySet<Integer> set;
+    private final Integer[] queries = new Integer[QUERIES];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Collection<Integer> evens = new AbstractList<>() {
+            @Override
+            public Integer get(int index) {
+                return 2 * index;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+        set = "eytzinger".equals(layout)
+                ? ArraySet.withEytzingerLayout(evens, null)
+                : new ArraySet<>(evens, null);
+        Random random = new Random(size);
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = random.nextInt(2 * size);
+        }
+    }
+
+    private Integer query() {
+        next = (next + 1) & (QUERIES - 1);
+        return queries[next];
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return set.contains(query());
+    }
+
+    @Benchmark
+    public Integer floor() {
+        return set.floor(query());
+    }
+
+}
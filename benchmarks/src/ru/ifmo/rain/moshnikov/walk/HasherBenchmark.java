@@ -0,0 +1,70 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// One file hashed over and over, from the page cache after the first read: what the hash and the read strategy
+// cost per byte. "thread-local" is the static FnvFileHasher.hash the walkers call, "auto" the same strategy
+// without the per-call lookup of the thread's hasher.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HasherBenchmark {
+
+    @Param({"1024", "65536", "1048576", "67108864"})
+    public int size;
+
+    @Param({"read", "mapped", "auto", "thread-local"})
+    public String strategy;
+
+    @Param({"fnv1-32", "fnv1a-64", "xxh64"})
+    public String algorithm;
+
+    private Path file;
+    private HashAlgorithm hashAlgorithm;
+    private FnvFileHasher hasher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("hasher-benchmark", ".bin");
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(bytes);
+        }
+        hashAlgorithm = HashAlgorithm.forName(algorithm);
+        hasher = new FnvFileHasher(hashAlgorithm, mapThreshold(strategy));
+    }
+
+    private static long mapThreshold(String strategy) {
+        switch (strategy) {
+            case "read":
+                return Long.MAX_VALUE;
+            case "mapped":
+                return 0;
+            default:
+                return FnvFileHasher.MAP_THRESHOLD;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long hash(ByteCounter counter) {
+        counter.bytes += size;
+        return "thread-local".equals(strategy) ? FnvFileHasher.hash(file, hashAlgorithm) : hasher.hashFile(file);
+    }
+
+}
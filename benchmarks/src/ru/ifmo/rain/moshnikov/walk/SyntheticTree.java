@@ -0,0 +1,94 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+// The trees the walk benchmarks run over. Contents come from a fixed seed, so every run reads the same bytes.
+enum SyntheticTree {
+
+    // 20 000 files of 512 bytes in 200 directories: listing and per-file overhead
+    TINY_FILES {
+        @Override
+        long create(Path root, Random random) throws IOException {
+            long total = 0;
+            for (int dir = 0; dir < 200; dir++) {
+                Path directory = Files.createDirectories(root.resolve("d" + dir));
+                for (int file = 0; file < 100; file++) {
+                    total += write(directory.resolve("f" + file), 512, random);
+                }
+            }
+            return total;
+        }
+    },
+
+    // four files of 256 MiB: raw hashing throughput and the mapped path
+    HUGE_FILES {
+        @Override
+        long create(Path root, Random random) throws IOException {
+            long total = 0;
+            for (int file = 0; file < 4; file++) {
+                total += write(root.resolve("huge" + file), 256L << 20, random);
+            }
+            return total;
+        }
+    },
+
+    // 100 chains of 64 nested directories with a 4 KiB file on every level: deep recursion and long paths
+    DEEP_NESTING {
+        @Override
+        long create(Path root, Random random) throws IOException {
+            long total = 0;
+            for (int chain = 0; chain < 100; chain++) {
+                Path directory = root.resolve("c" + chain);
+                for (int depth = 0; depth < 64; depth++) {
+                    directory = Files.createDirectories(directory.resolve("level" + depth));
+                    total += write(directory.resolve("f"), 4096, random);
+                }
+            }
+            return total;
+        }
+    };
+
+    private static final int BLOCK = 1 << 20;
+
+    // the total size of the files written under root
+    abstract long create(Path root, Random random) throws IOException;
+
+    long create(Path root) throws IOException {
+        return create(root, new Random(ordinal()));
+    }
+
+    private static long write(Path file, long size, Random random) throws IOException {
+        byte[] block = new byte[(int) Math.min(size, BLOCK)];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += block.length) {
+                random.nextBytes(block);
+                out.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+        return size;
+    }
+
+    static void delete(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
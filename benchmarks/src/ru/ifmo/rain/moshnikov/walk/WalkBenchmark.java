@@ -0,0 +1,57 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// RecursiveWalk end to end over a generated tree, output written to a temporary file like a real run.
+// The tree stays in the page cache between iterations, so this measures everything but the disk.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class WalkBenchmark {
+
+    @Param({"TINY_FILES", "HUGE_FILES", "DEEP_NESTING"})
+    public SyntheticTree tree;
+
+    // 0 is the sequential walker
+    @Param({"0", "4"})
+    public int threads;
+
+    @Param({"blocking", "async"})
+    public String engine;
+
+    private Path directory;
+    private long bytes;
+    private String[] args;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("walk-benchmark");
+        Path root = Files.createDirectory(directory.resolve("tree"));
+        bytes = tree.create(root);
+        Path input = Files.writeString(directory.resolve("input.txt"), root.toString());
+        String output = directory.resolve("output.txt").toString();
+        args = "async".equals(engine)
+                ? new String[]{input.toString(), output, Integer.toString(threads), "--async", "16"}
+                : new String[]{input.toString(), output, Integer.toString(threads)};
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticTree.delete(directory);
+    }
+
+    @Benchmark
+    public void walk(ByteCounter counter) {
+        RecursiveWalk.main(args);
+        counter.bytes += bytes;
+    }
+
+}
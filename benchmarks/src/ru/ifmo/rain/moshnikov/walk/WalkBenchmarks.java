@@ -0,0 +1,19 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the benchmarks matching the regular expression given (all by default) with the GC profiler, so
+// allocation rates (gc.alloc.rate.norm, bytes per operation) are reported next to ops/s and bytes/s.
+public class WalkBenchmarks {
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : WalkBenchmarks.class.getPackageName() + ".*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,262 @@
+package ru.ifmo.rain.moshnikov.arrayset;
+
+import java.util.*;
+
+//Immutable NavigableMap over two parallel arrays: the keys are an ArraySet, the value of a key sits in values
+//at the key's place in the keys' array. Lookups are the ArraySet binary search, sub-maps and the descending map
+//are ArraySet views of the keys over the same values, so no entry objects are kept.
+public class ArrayMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+    private final ArraySet<K> keys;
+    private final Object[] values;
+
+    public ArrayMap(Map<? extends K, ? extends V> sourceEntries) {
+        this(sourceEntries.entrySet(), null);
+    }
+
+    public ArrayMap(Map<? extends K, ? extends V> sourceEntries, Comparator<? super K> comparator) {
+        this(sourceEntries.entrySet(), comparator);
+    }
+
+    //of entries with equal keys the first key and the last value stay, like TreeMap.put keeps them
+    @SuppressWarnings("unchecked")
+    public ArrayMap(Collection<? extends Map.Entry<? extends K, ? extends V>> sourceEntries, Comparator<? super K> comparator) {
+        Map.Entry<K, V>[] entries = entryArray(sourceEntries);
+        Comparator<Map.Entry<K, V>> byKey = (a, b) -> ArraySet.compare(comparator, a.getKey(), b.getKey());
+        //both sorts are stable, so equal keys keep their order
+        if (entries.length >= ArraySet.PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(entries, byKey);
+        } else {
+            Arrays.sort(entries, byKey);
+        }
+        Object[] sortedKeys = new Object[entries.length];
+        Object[] sortedValues = new Object[entries.length];
+        int size = 0;
+        for (Map.Entry<K, V> entry : entries) {
+            if (size == 0 || ArraySet.compare(comparator, (K) sortedKeys[size - 1], entry.getKey()) != 0) {
+                sortedKeys[size++] = entry.getKey();
+            }
+            sortedValues[size - 1] = entry.getValue();
+        }
+        this.keys = new ArraySet<>(Arrays.copyOf(sortedKeys, size), comparator);
+        this.values = size == entries.length ? sortedValues : Arrays.copyOf(sortedValues, size);
+    }
+
+    //entries are only read, so an array of the wildcard type is safe to use as the exact one
+    @SuppressWarnings("unchecked")
+    private static <K, V> Map.Entry<K, V>[] entryArray(Collection<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        return (Map.Entry<K, V>[]) entries.toArray(new Map.Entry<?, ?>[0]);
+    }
+
+    public ArrayMap(Comparator<? super K> comparator) {
+        this(Collections.emptyList(), comparator);
+    }
+
+    public ArrayMap() {
+        this(Collections.emptyList(), null);
+    }
+
+    private ArrayMap(ArraySet<K> keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int ind) {
+        return (V) values[keys.arrayIndex(ind)];
+    }
+
+    private Map.Entry<K, V> entry(int ind) {
+        return new AbstractMap.SimpleImmutableEntry<>(keys.get(ind), value(ind));
+    }
+
+    private Map.Entry<K, V> entryOnPlace(int ind) {
+        return ind < 0 || ind >= keys.size() ? null : entry(ind);
+    }
+
+    private K keyOnPlace(int ind) {
+        return ind < 0 || ind >= keys.size() ? null : keys.get(ind);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int ind = keys.getInd((K) key);
+        return ind < 0 ? null : value(ind);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return keys.contains(key);
+    }
+
+    @Override
+    public int size() {
+        return keys.size();
+    }
+
+    //like <
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return entryOnPlace(keys.getPrevInd(key, false));
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keyOnPlace(keys.getPrevInd(key, false));
+    }
+
+    //like <=
+    @Override
+    public Map.Entry<K, V> floorEntry(K key) {
+        return entryOnPlace(keys.getPrevInd(key, true));
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keyOnPlace(keys.getPrevInd(key, true));
+    }
+
+    //like >=
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return entryOnPlace(keys.getNextIndex(key, true));
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keyOnPlace(keys.getNextIndex(key, true));
+    }
+
+    //like >
+    @Override
+    public Map.Entry<K, V> higherEntry(K key) {
+        return entryOnPlace(keys.getNextIndex(key, false));
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keyOnPlace(keys.getNextIndex(key, false));
+    }
+
+    @Override
+    public Map.Entry<K, V> firstEntry() {
+        return entryOnPlace(0);
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() {
+        return entryOnPlace(keys.size() - 1);
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public K firstKey() {
+        return keys.first();
+    }
+
+    @Override
+    public K lastKey() {
+        return keys.last();
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return keys.comparator();
+    }
+
+    //the keys of a view are a view of the keys over the same values
+    private NavigableMap<K, V> view(ArraySet<K> viewKeys) {
+        return new ArrayMap<>(viewKeys, values);
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return view(keys.descendingSet());
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) throws IllegalArgumentException {
+        return view(keys.subSet(fromKey, fromInclusive, toKey, toInclusive));
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return view(keys.headSet(toKey, inclusive));
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return view(keys.tailSet(fromKey, inclusive));
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return keys;
+    }
+
+    @Override
+    public NavigableSet<K> keySet() {
+        return keys;
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return keys.descendingSet();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new Iterator<>() {
+                    private int ind = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return ind < keys.size();
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return entry(ind++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+        };
+    }
+
+}
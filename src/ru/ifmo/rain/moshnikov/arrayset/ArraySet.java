@@ -4,17 +4,24 @@ import java.util.*;
 
 public class ArraySet<O> extends AbstractSet<O> implements NavigableSet<O> {
 
-    private final List<? extends O> sourceElements;
+    //below it a parallel sort only pays for splitting
+    static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    //this set is elements[from, from + size), backwards if reversed: views share the array of the set
+    //they are taken from, so a view of a view is as flat as the set itself
+    private final Object[] elements;
+    private final int from;
+    private final int size;
+    private final boolean reversed;
+    //the order of the shared array and the order of this view, its reverse if reversed
+    private final Comparator<? super O> base;
     private final Comparator<? super O> comparator;
+    //read-optimized search order, null for plain binary search
+    private final Eytzinger<O> layout;
 
 
     public ArraySet(Collection<?extends O> sourceElements) {
-        if (isCollectionSorted(sourceElements)) {
-            this.sourceElements = List.copyOf(sourceElements);
-        } else {
-            this.sourceElements = List.copyOf(new TreeSet<>(sourceElements));
-        }
-        this.comparator = null;
+        this(sourceElements, null);
     }
 
     public ArraySet(Comparator<? super O> comparator) {
@@ -22,90 +29,125 @@ public class ArraySet<O> extends AbstractSet<O> implements NavigableSet<O> {
     }
 
     public ArraySet(Collection<? extends O> sourceElements, Comparator<? super O> comparator) {
-        this.comparator = comparator;
-        if (!isCollectionSorted(sourceElements)) {
-            SortedSet<O> sortedSet = new TreeSet<>(comparator);
-            sortedSet.addAll(sourceElements);
-            this.sourceElements = List.copyOf(sortedSet);
-        } else {
-            this.sourceElements = List.copyOf(sourceElements);
-        }
+        this(sortedDistinct(sourceElements, comparator), comparator);
     }
 
     public ArraySet() {
         this(Collections.emptyList(), null);
     }
 
-    private ArraySet(List<? extends O> sourceElements, Comparator<? super O> comparator) {
-        this.sourceElements = sourceElements;
-        this.comparator = comparator;
+    //elements are already sorted by comparator and distinct
+    ArraySet(Object[] elements, Comparator<? super O> comparator) {
+        this(elements, 0, elements.length, false, comparator, null);
     }
 
-    private boolean isCollectionSorted(Collection<? extends O> collection) {
-        Iterator<? extends O> pointer = collection.iterator();
-        O next = null;
-        O prev;
-        while (pointer.hasNext()) {
-            if (next != null) {
-                prev = next;
-            } else {
-                prev = pointer.next();
+    private ArraySet(Object[] elements, int from, int size, boolean reversed, Comparator<? super O> base, Eytzinger<O> layout) {
+        this.elements = elements;
+        this.from = from;
+        this.size = size;
+        this.reversed = reversed;
+        this.base = base;
+        this.comparator = reversed ? Collections.reverseOrder(base) : base;
+        this.layout = layout;
+    }
+
+    //same set with lookups (contains, lower, floor, ceiling, higher) through an Eytzinger layout:
+    //faster on large sets, twice the memory, views fall back to binary search
+    public static <O> ArraySet<O> withEytzingerLayout(Collection<? extends O> sourceElements, Comparator<? super O> comparator) {
+        Object[] elements = sortedDistinct(sourceElements, comparator);
+        return new ArraySet<>(elements, 0, elements.length, false, comparator, new Eytzinger<>(elements, comparator));
+    }
+
+    //sorts a copy of the elements and keeps the first of equal ones, like TreeSet.addAll does,
+    //without a tree node per element; sorted input is only checked
+    @SuppressWarnings("unchecked")
+    private static <O> Object[] sortedDistinct(Collection<? extends O> sourceElements, Comparator<? super O> comparator) {
+        O[] elements = (O[]) sourceElements.toArray();
+        if (isSorted(elements, comparator)) {
+            return elements;
+        }
+        //both sorts are stable
+        if (elements.length >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(elements, comparator);
+        } else {
+            Arrays.sort(elements, comparator);
+        }
+        int size = 0;
+        for (O element : elements) {
+            if (size == 0 || compare(comparator, elements[size - 1], element) != 0) {
+                elements[size++] = element;
             }
-            if (pointer.hasNext()) {
-                next = pointer.next();
-                if (compare(prev, next) >= 0) {
-                    return false;
-                }
+        }
+        return size == elements.length ? elements : Arrays.copyOf(elements, size);
+    }
+
+    //strictly increasing, so no duplicates either
+    private static <O> boolean isSorted(O[] elements, Comparator<? super O> comparator) {
+        for (int i = 1; i < elements.length; i++) {
+            if (compare(comparator, elements[i - 1], elements[i]) >= 0) {
+                return false;
             }
         }
         return true;
     }
 
+    //one array access whatever view this is
+    @SuppressWarnings("unchecked")
+    O get(int ind) {
+        return (O) elements[arrayIndex(ind)];
+    }
+
+    //where the element ind of this view is in the shared array, ArrayMap keeps its values at the same places
+    int arrayIndex(int ind) {
+        return reversed ? from + size - 1 - ind : from + ind;
+    }
+
     private O elementOnPlace(int ind) {
-        if (ind >= sourceElements.size()) {
+        if (ind >= size) {
             return null;
         } else if (ind < 0) {
             return null;
         }
-        return sourceElements.get(ind);
+        return get(ind);
     }
 
-    private int getInd(O element) {
-        return Collections.binarySearch(sourceElements, element, comparator);
+    //index of the element or -(insertion point) - 1, like Collections.binarySearch
+    int getInd(O element) {
+        if (layout != null) {
+            return layout.search(element);
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(get(mid), element);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
     }
 
     //for find lower, floor  not in linear time
-    private int getPrevInd(O element, boolean include) {
-        if (include) {
-            if (getInd(element) < 0) {
-                return -(getInd(element) + 1) - 1;
-            } else {
-                return getInd(element);
-            }
-        } else {
-            if (getInd(element) < 0) {
-                return -(getInd(element) + 1) - 1;
-            } else {
-                return getInd(element) - 1;
-            }
+    int getPrevInd(O element, boolean include) {
+        int ind = getInd(element);
+        if (ind < 0) {
+            return -(ind + 1) - 1;
         }
+        return include ? ind : ind - 1;
     }
 
     //for find higher, ceiling not in linear time
-    private int getNextIndex(O element, boolean include) {
-        if (include) {
-            if (getInd(element) < 0) {
-                return -(getInd(element) + 1);
-            } else {
-                return getInd(element);
-            }
-        } else {
-            if (getInd(element) < 0) {
-                return -(getInd(element) + 1);
-            } else {
-                return getInd(element) + 1;
-            }
+    int getNextIndex(O element, boolean include) {
+        int ind = getInd(element);
+        if (ind < 0) {
+            return -(ind + 1);
         }
+        return include ? ind : ind + 1;
     }
 
     @Override
@@ -130,6 +172,31 @@ public class ArraySet<O> extends AbstractSet<O> implements NavigableSet<O> {
         return elementOnPlace(getNextIndex(element, false));
     }
 
+    //number of elements less than element, in the order of this set
+    public int rank(O element) {
+        return getNextIndex(element, true);
+    }
+
+    //element with index ind, the one with rank ind
+    public O select(int ind) {
+        Objects.checkIndex(ind, size);
+        return get(ind);
+    }
+
+    //index of the element or -1, like List.indexOf
+    public int indexOf(O element) {
+        int ind = getInd(element);
+        return ind < 0 ? -1 : ind;
+    }
+
+    //size of subSet(from, fromInclusive, to, toInclusive) without making it
+    public int countInRange(O from, boolean fromInclusive, O to, boolean toInclusive) throws IllegalArgumentException {
+        if (compare(from, to) > 0) {
+            throw new IllegalArgumentException();
+        }
+        return Math.max(0, getPrevInd(to, toInclusive) + 1 - getNextIndex(from, fromInclusive));
+    }
+
     //return first element
     @Override
     public O pollFirst() throws UnsupportedOperationException {
@@ -144,18 +211,43 @@ public class ArraySet<O> extends AbstractSet<O> implements NavigableSet<O> {
 
     @Override
     public Iterator<O> iterator() {
-        return (Iterator<O>) sourceElements.iterator();
+        return new Iterator<>() {
+            private int ind = 0;
+
+            @Override
+            public boolean hasNext() {
+                return ind < size;
+            }
+
+            @Override
+            public O next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(ind++);
+            }
+        };
     }
 
     @Override
+    public Object[] toArray() {
+        Object[] result = Arrays.copyOfRange(elements, from, from + size);
+        if (reversed) {
+            Collections.reverse(Arrays.asList(result));
+        }
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
     public boolean contains(Object el) throws NoSuchElementException {
-        return Collections.binarySearch(sourceElements, el, (Comparator) comparator) >= 0;
+        return getInd((O) el) >= 0;
     }
 
     //special set with reverse order of elements
     @Override
-    public NavigableSet<O> descendingSet() {
-        return new ArraySet<>(new ReversedList<>(sourceElements), Collections.reverseOrder(comparator));
+    public ArraySet<O> descendingSet() {
+        return new ArraySet<>(elements, from, size, !reversed, base, null);
     }
 
     //another descending iterator
@@ -166,28 +258,64 @@ public class ArraySet<O> extends AbstractSet<O> implements NavigableSet<O> {
 
     //to stack piece of sequence
     @Override
-    public NavigableSet<O> subSet(O from, boolean fromInclusive, O to, boolean toInclusive) throws IllegalArgumentException {
+    public ArraySet<O> subSet(O from, boolean fromInclusive, O to, boolean toInclusive) throws IllegalArgumentException {
         if (compare(from, to) > 0) {
             throw new IllegalArgumentException();
         }
         int fromInt = getNextIndex(from, fromInclusive);
         int toInt = getPrevInd(to, toInclusive);
-        if (fromInt <= toInt) {
-            return new ArraySet<>(sourceElements.subList(fromInt, toInt + 1), comparator);
-        }
-        return new ArraySet<>(Collections.emptyList(), comparator);
+        return view(fromInt, Math.max(fromInt, toInt + 1));
     }
 
     //return the start piece of list to element "to"
     @Override
-    public NavigableSet<O> headSet(O to, boolean include) {
-        return new ArraySet<>(sourceElements.subList(0, getPrevInd(to, include) + 1), comparator);
+    public ArraySet<O> headSet(O to, boolean include) {
+        return view(0, getPrevInd(to, include) + 1);
     }
 
     //return the last piece of list from element "from"
     @Override
-    public NavigableSet<O> tailSet(O from, boolean include) {
-            return new ArraySet<>(sourceElements.subList(getNextIndex(from, include), sourceElements.size()), comparator);
+    public ArraySet<O> tailSet(O from, boolean include) {
+        return view(getNextIndex(from, include), size);
+    }
+
+    //elements [fromInd, toInd) of this set
+    private ArraySet<O> view(int fromInd, int toInd) {
+        int start = reversed ? from + size - toInd : from + fromInd;
+        return new ArraySet<>(elements, start, toInd - fromInd, reversed, base, null);
+    }
+
+    //elements of either set, of equal ones this set's
+    public ArraySet<O> union(ArraySet<O> other) {
+        return combine(SetAlgebra.Operation.UNION, other);
+    }
+
+    //elements of this set that the other one contains too
+    public ArraySet<O> intersection(ArraySet<O> other) {
+        return combine(SetAlgebra.Operation.INTERSECTION, other);
+    }
+
+    //elements of this set that the other one does not contain
+    public ArraySet<O> difference(ArraySet<O> other) {
+        return combine(SetAlgebra.Operation.DIFFERENCE, other);
+    }
+
+    //elements of exactly one of the sets
+    public ArraySet<O> symmetricDifference(ArraySet<O> other) {
+        return combine(SetAlgebra.Operation.SYMMETRIC_DIFFERENCE, other);
+    }
+
+    //both sets are sorted by the same order, so one merge does it, see SetAlgebra
+    private ArraySet<O> combine(SetAlgebra.Operation operation, ArraySet<O> other) {
+        if (!Objects.equals(comparator, other.comparator)) {
+            throw new IllegalArgumentException("Sets are ordered by different comparators");
+        }
+        //a reversed view is copied in its own order, otherwise the merge reads the shared array
+        Object[] a = reversed ? toArray() : elements;
+        int aFrom = reversed ? 0 : from;
+        Object[] b = other.reversed ? other.toArray() : other.elements;
+        int bFrom = other.reversed ? 0 : other.from;
+        return new ArraySet<>(new SetAlgebra(operation, comparator).apply(a, aFrom, aFrom + size, b, bFrom, bFrom + other.size), comparator);
     }
 
     @Override
@@ -196,23 +324,23 @@ public class ArraySet<O> extends AbstractSet<O> implements NavigableSet<O> {
     }
 
     @Override
-    public SortedSet<O> subSet(O fromElement, O toElement) {
+    public ArraySet<O> subSet(O fromElement, O toElement) {
         return subSet(fromElement, true, toElement, false);
     }
 
     @Override
-    public SortedSet<O> headSet(O toElement) {
+    public ArraySet<O> headSet(O toElement) {
         return headSet(toElement, false);
     }
 
     @Override
-    public SortedSet<O> tailSet(O fromElement) {
+    public ArraySet<O> tailSet(O fromElement) {
         return tailSet(fromElement, true);
     }
 
     @Override
     public O first() {
-        if (sourceElements.isEmpty()) {
+        if (size == 0) {
             throw new NoSuchElementException();
         }
         return elementOnPlace(0);
@@ -220,7 +348,7 @@ public class ArraySet<O> extends AbstractSet<O> implements NavigableSet<O> {
 
     @Override
     public O last() throws NoSuchElementException {
-        if (sourceElements.isEmpty()) {
+        if (size == 0) {
             throw new NoSuchElementException();
         }
         return elementOnPlace(size() - 1);
@@ -228,10 +356,15 @@ public class ArraySet<O> extends AbstractSet<O> implements NavigableSet<O> {
 
     @Override
     public int size() {
-        return sourceElements.size();
+        return size;
     }
 
     private int compare(O elementFirst, O elementSecond) {
+        return compare(comparator, elementFirst, elementSecond);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <O> int compare(Comparator<? super O> comparator, O elementFirst, O elementSecond) {
         if (comparator == null) {
             return ((Comparable<? super O>) elementFirst).compareTo(elementSecond);
         } else {
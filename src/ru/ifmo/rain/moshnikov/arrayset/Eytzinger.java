@@ -0,0 +1,61 @@
+package ru.ifmo.rain.moshnikov.arrayset;
+
+import java.util.Comparator;
+
+//Sorted elements in Eytzinger (BFS) order: the children of tree[k] are tree[2k] and tree[2k + 1].
+//The first levels of every search share a few cache lines and the probes of the next levels are next to each other,
+//so the loads the CPU starts speculatively down the predicted branch are mostly the right cache lines.
+//A branch-free descent (cmov) measured twice slower: without a prefetch instruction it waits for every load in turn.
+class Eytzinger<O> {
+
+    private final Object[] tree;
+    //ranks[k] is the index of tree[k] in sorted order
+    private final int[] ranks;
+    private final Comparator<? super O> comparator;
+
+    Eytzinger(Object[] sorted, Comparator<? super O> comparator) {
+        this.tree = new Object[sorted.length + 1];
+        this.ranks = new int[sorted.length + 1];
+        this.comparator = comparator;
+        fill(sorted, 0, 1);
+    }
+
+    //in-order walk of the implicit tree takes the elements in sorted order
+    private int fill(Object[] sorted, int ind, int k) {
+        if (k < tree.length) {
+            ind = fill(sorted, ind, 2 * k);
+            tree[k] = sorted[ind];
+            ranks[k] = ind++;
+            ind = fill(sorted, ind, 2 * k + 1);
+        }
+        return ind;
+    }
+
+    //same result as Collections.binarySearch over the sorted elements
+    int search(O element) {
+        int k = 1;
+        while (k < tree.length) {
+            if (compare(element, k) > 0) {
+                k = 2 * k + 1;
+            } else {
+                k = 2 * k;
+            }
+        }
+        //drop the right turns taken after the last left one: that node is the first element >= element
+        k >>= Integer.numberOfTrailingZeros(~k) + 1;
+        if (k == 0) {
+            return -(tree.length - 1) - 1;
+        }
+        return compare(element, k) == 0 ? ranks[k] : -ranks[k] - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(O element, int k) {
+        O node = (O) tree[k];
+        if (comparator == null) {
+            return ((Comparable<? super O>) element).compareTo(node);
+        }
+        return comparator.compare(element, node);
+    }
+
+}
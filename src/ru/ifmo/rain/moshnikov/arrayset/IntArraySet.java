@@ -0,0 +1,298 @@
+package ru.ifmo.rain.moshnikov.arrayset;
+
+import java.util.*;
+
+//ArraySet of ints kept in a sorted int[]: 4 bytes per element and no pointer chase per probe.
+//The int methods never box: navigation returns an index (-1 if there is no such element) to read with getInt,
+//or the element itself with the value to return if there is none. Views share the array, the descending one too:
+//it is the same window read backwards. The Integer methods of NavigableSet are there too and box as usual.
+public class IntArraySet extends AbstractSet<Integer> implements NavigableSet<Integer> {
+
+    private final int[] elements;
+    //this set is elements[from, to), backwards if reversed
+    private final int from;
+    private final int to;
+    private final boolean reversed;
+
+    public IntArraySet(int... sourceElements) {
+        int[] sorted = sourceElements.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || sorted[size - 1] != sorted[i]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        this.elements = sorted;
+        this.from = 0;
+        this.to = size;
+        this.reversed = false;
+    }
+
+    public IntArraySet(Collection<Integer> sourceElements) {
+        this(sourceElements.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public IntArraySet() {
+        this(new int[0], 0, 0, false);
+    }
+
+    private IntArraySet(int[] elements, int from, int to, boolean reversed) {
+        this.elements = elements;
+        this.from = from;
+        this.to = to;
+        this.reversed = reversed;
+    }
+
+    //ascending index of the element or -(insertion point) - 1, like Arrays.binarySearch
+    private int getInd(int element) {
+        int ind = Arrays.binarySearch(elements, from, to, element);
+        return ind < 0 ? ind + from : ind - from;
+    }
+
+    //ascending index to the index in the order of this set and back
+    private int ordered(int ind) {
+        return reversed ? size() - 1 - ind : ind;
+    }
+
+    //ascending index of the greatest element less than (or equal to) element, -1 if there is none
+    private int before(int element, boolean inclusive) {
+        int ind = getInd(element);
+        return ind < 0 ? -(ind + 1) - 1 : inclusive ? ind : ind - 1;
+    }
+
+    //ascending index of the least element greater than (or equal to) element, size() if there is none
+    private int after(int element, boolean inclusive) {
+        int ind = getInd(element);
+        return ind < 0 ? -(ind + 1) : inclusive ? ind : ind + 1;
+    }
+
+    private int found(int ind) {
+        return ind >= 0 && ind < size() ? ordered(ind) : -1;
+    }
+
+    public boolean contains(int element) {
+        return Arrays.binarySearch(elements, from, to, element) >= 0;
+    }
+
+    public int getInt(int index) {
+        Objects.checkIndex(index, size());
+        return elements[from + ordered(index)];
+    }
+
+    //like <
+    public int lowerIndex(int element) {
+        return found(reversed ? after(element, false) : before(element, false));
+    }
+
+    //like <=
+    public int floorIndex(int element) {
+        return found(reversed ? after(element, true) : before(element, true));
+    }
+
+    //like >=
+    public int ceilingIndex(int element) {
+        return found(reversed ? before(element, true) : after(element, true));
+    }
+
+    //like >
+    public int higherIndex(int element) {
+        return found(reversed ? before(element, false) : after(element, false));
+    }
+
+    //the value navigation returns absent if there is no such element: pass a value the set cannot contain,
+    //otherwise the index methods tell the two apart
+    private int valueOnPlace(int ind, int absent) {
+        return ind < 0 ? absent : elements[from + ordered(ind)];
+    }
+
+    //like <
+    public int lowerInt(int element, int absent) {
+        return valueOnPlace(lowerIndex(element), absent);
+    }
+
+    //like <=
+    public int floorInt(int element, int absent) {
+        return valueOnPlace(floorIndex(element), absent);
+    }
+
+    //like >=
+    public int ceilingInt(int element, int absent) {
+        return valueOnPlace(ceilingIndex(element), absent);
+    }
+
+    //like >
+    public int higherInt(int element, int absent) {
+        return valueOnPlace(higherIndex(element), absent);
+    }
+
+    public int firstInt() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return elements[reversed ? to - 1 : from];
+    }
+
+    public int lastInt() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return elements[reversed ? from : to - 1];
+    }
+
+    public int[] toIntArray() {
+        int[] result = Arrays.copyOfRange(elements, from, to);
+        if (reversed) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                int swap = result[i];
+                result[i] = result[j];
+                result[j] = swap;
+            }
+        }
+        return result;
+    }
+
+    //ascending indices [fromIndex, toIndex) in the order of this set
+    private IntArraySet view(int fromIndex, int toIndex) {
+        return new IntArraySet(elements, from + fromIndex, from + Math.max(fromIndex, toIndex), reversed);
+    }
+
+    public IntArraySet subSet(int fromElement, boolean fromInclusive, int toElement, boolean toInclusive) {
+        if (reversed ? fromElement < toElement : fromElement > toElement) {
+            throw new IllegalArgumentException();
+        }
+        return reversed
+                ? view(after(toElement, toInclusive), before(fromElement, fromInclusive) + 1)
+                : view(after(fromElement, fromInclusive), before(toElement, toInclusive) + 1);
+    }
+
+    public IntArraySet headSet(int toElement, boolean inclusive) {
+        return reversed ? view(after(toElement, inclusive), size()) : view(0, before(toElement, inclusive) + 1);
+    }
+
+    public IntArraySet tailSet(int fromElement, boolean inclusive) {
+        return reversed ? view(0, before(fromElement, inclusive) + 1) : view(after(fromElement, inclusive), size());
+    }
+
+    private Integer elementOnPlace(int ind) {
+        return ind < 0 ? null : elements[from + ordered(ind)];
+    }
+
+    @Override
+    public Integer lower(Integer element) {
+        return elementOnPlace(lowerIndex(element));
+    }
+
+    @Override
+    public Integer floor(Integer element) {
+        return elementOnPlace(floorIndex(element));
+    }
+
+    @Override
+    public Integer ceiling(Integer element) {
+        return elementOnPlace(ceilingIndex(element));
+    }
+
+    @Override
+    public Integer higher(Integer element) {
+        return elementOnPlace(higherIndex(element));
+    }
+
+    @Override
+    public Integer pollFirst() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Integer pollLast() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    //nextInt does not box
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int ind = 0;
+
+            @Override
+            public boolean hasNext() {
+                return ind < size();
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return elements[from + ordered(ind++)];
+            }
+        };
+    }
+
+    @Override
+    public boolean contains(Object el) {
+        return el instanceof Integer && contains((int) (Integer) el);
+    }
+
+    //the same window read backwards, nothing is copied or boxed
+    @Override
+    public IntArraySet descendingSet() {
+        return new IntArraySet(elements, from, to, !reversed);
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    @Override
+    public IntArraySet subSet(Integer from, boolean fromInclusive, Integer to, boolean toInclusive) {
+        return subSet((int) from, fromInclusive, (int) to, toInclusive);
+    }
+
+    @Override
+    public IntArraySet headSet(Integer to, boolean include) {
+        return headSet((int) to, include);
+    }
+
+    @Override
+    public IntArraySet tailSet(Integer from, boolean include) {
+        return tailSet((int) from, include);
+    }
+
+    @Override
+    public Comparator<? super Integer> comparator() {
+        return reversed ? Collections.reverseOrder() : null;
+    }
+
+    @Override
+    public IntArraySet subSet(Integer fromElement, Integer toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public IntArraySet headSet(Integer toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public IntArraySet tailSet(Integer fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public Integer first() {
+        return firstInt();
+    }
+
+    @Override
+    public Integer last() {
+        return lastInt();
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+}
@@ -0,0 +1,298 @@
+package ru.ifmo.rain.moshnikov.arrayset;
+
+import java.util.*;
+
+//ArraySet of longs kept in a sorted long[]: 8 bytes per element and no pointer chase per probe.
+//The long methods never box: navigation returns an index (-1 if there is no such element) to read with getLong,
+//or the element itself with the value to return if there is none. Views share the array, the descending one too:
+//it is the same window read backwards. The Long methods of NavigableSet are there too and box as usual.
+public class LongArraySet extends AbstractSet<Long> implements NavigableSet<Long> {
+
+    private final long[] elements;
+    //this set is elements[from, to), backwards if reversed
+    private final int from;
+    private final int to;
+    private final boolean reversed;
+
+    public LongArraySet(long... sourceElements) {
+        long[] sorted = sourceElements.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || sorted[size - 1] != sorted[i]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        this.elements = sorted;
+        this.from = 0;
+        this.to = size;
+        this.reversed = false;
+    }
+
+    public LongArraySet(Collection<Long> sourceElements) {
+        this(sourceElements.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    public LongArraySet() {
+        this(new long[0], 0, 0, false);
+    }
+
+    private LongArraySet(long[] elements, int from, int to, boolean reversed) {
+        this.elements = elements;
+        this.from = from;
+        this.to = to;
+        this.reversed = reversed;
+    }
+
+    //ascending index of the element or -(insertion point) - 1, like Arrays.binarySearch
+    private int getInd(long element) {
+        int ind = Arrays.binarySearch(elements, from, to, element);
+        return ind < 0 ? ind + from : ind - from;
+    }
+
+    //ascending index to the index in the order of this set and back
+    private int ordered(int ind) {
+        return reversed ? size() - 1 - ind : ind;
+    }
+
+    //ascending index of the greatest element less than (or equal to) element, -1 if there is none
+    private int before(long element, boolean inclusive) {
+        int ind = getInd(element);
+        return ind < 0 ? -(ind + 1) - 1 : inclusive ? ind : ind - 1;
+    }
+
+    //ascending index of the least element greater than (or equal to) element, size() if there is none
+    private int after(long element, boolean inclusive) {
+        int ind = getInd(element);
+        return ind < 0 ? -(ind + 1) : inclusive ? ind : ind + 1;
+    }
+
+    private int found(int ind) {
+        return ind >= 0 && ind < size() ? ordered(ind) : -1;
+    }
+
+    public boolean contains(long element) {
+        return Arrays.binarySearch(elements, from, to, element) >= 0;
+    }
+
+    public long getLong(int index) {
+        Objects.checkIndex(index, size());
+        return elements[from + ordered(index)];
+    }
+
+    //like <
+    public int lowerIndex(long element) {
+        return found(reversed ? after(element, false) : before(element, false));
+    }
+
+    //like <=
+    public int floorIndex(long element) {
+        return found(reversed ? after(element, true) : before(element, true));
+    }
+
+    //like >=
+    public int ceilingIndex(long element) {
+        return found(reversed ? before(element, true) : after(element, true));
+    }
+
+    //like >
+    public int higherIndex(long element) {
+        return found(reversed ? before(element, false) : after(element, false));
+    }
+
+    //the value navigation returns absent if there is no such element: pass a value the set cannot contain,
+    //otherwise the index methods tell the two apart
+    private long valueOnPlace(int ind, long absent) {
+        return ind < 0 ? absent : elements[from + ordered(ind)];
+    }
+
+    //like <
+    public long lowerLong(long element, long absent) {
+        return valueOnPlace(lowerIndex(element), absent);
+    }
+
+    //like <=
+    public long floorLong(long element, long absent) {
+        return valueOnPlace(floorIndex(element), absent);
+    }
+
+    //like >=
+    public long ceilingLong(long element, long absent) {
+        return valueOnPlace(ceilingIndex(element), absent);
+    }
+
+    //like >
+    public long higherLong(long element, long absent) {
+        return valueOnPlace(higherIndex(element), absent);
+    }
+
+    public long firstLong() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return elements[reversed ? to - 1 : from];
+    }
+
+    public long lastLong() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return elements[reversed ? from : to - 1];
+    }
+
+    public long[] toLongArray() {
+        long[] result = Arrays.copyOfRange(elements, from, to);
+        if (reversed) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                long swap = result[i];
+                result[i] = result[j];
+                result[j] = swap;
+            }
+        }
+        return result;
+    }
+
+    //ascending indices [fromIndex, toIndex) in the order of this set
+    private LongArraySet view(int fromIndex, int toIndex) {
+        return new LongArraySet(elements, from + fromIndex, from + Math.max(fromIndex, toIndex), reversed);
+    }
+
+    public LongArraySet subSet(long fromElement, boolean fromInclusive, long toElement, boolean toInclusive) {
+        if (reversed ? fromElement < toElement : fromElement > toElement) {
+            throw new IllegalArgumentException();
+        }
+        return reversed
+                ? view(after(toElement, toInclusive), before(fromElement, fromInclusive) + 1)
+                : view(after(fromElement, fromInclusive), before(toElement, toInclusive) + 1);
+    }
+
+    public LongArraySet headSet(long toElement, boolean inclusive) {
+        return reversed ? view(after(toElement, inclusive), size()) : view(0, before(toElement, inclusive) + 1);
+    }
+
+    public LongArraySet tailSet(long fromElement, boolean inclusive) {
+        return reversed ? view(0, before(fromElement, inclusive) + 1) : view(after(fromElement, inclusive), size());
+    }
+
+    private Long elementOnPlace(int ind) {
+        return ind < 0 ? null : elements[from + ordered(ind)];
+    }
+
+    @Override
+    public Long lower(Long element) {
+        return elementOnPlace(lowerIndex(element));
+    }
+
+    @Override
+    public Long floor(Long element) {
+        return elementOnPlace(floorIndex(element));
+    }
+
+    @Override
+    public Long ceiling(Long element) {
+        return elementOnPlace(ceilingIndex(element));
+    }
+
+    @Override
+    public Long higher(Long element) {
+        return elementOnPlace(higherIndex(element));
+    }
+
+    @Override
+    public Long pollFirst() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Long pollLast() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    //nextLong does not box
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int ind = 0;
+
+            @Override
+            public boolean hasNext() {
+                return ind < size();
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return elements[from + ordered(ind++)];
+            }
+        };
+    }
+
+    @Override
+    public boolean contains(Object el) {
+        return el instanceof Long && contains((long) (Long) el);
+    }
+
+    //the same window read backwards, nothing is copied or boxed
+    @Override
+    public LongArraySet descendingSet() {
+        return new LongArraySet(elements, from, to, !reversed);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    @Override
+    public LongArraySet subSet(Long from, boolean fromInclusive, Long to, boolean toInclusive) {
+        return subSet((long) from, fromInclusive, (long) to, toInclusive);
+    }
+
+    @Override
+    public LongArraySet headSet(Long to, boolean include) {
+        return headSet((long) to, include);
+    }
+
+    @Override
+    public LongArraySet tailSet(Long from, boolean include) {
+        return tailSet((long) from, include);
+    }
+
+    @Override
+    public Comparator<? super Long> comparator() {
+        return reversed ? Collections.reverseOrder() : null;
+    }
+
+    @Override
+    public LongArraySet subSet(Long fromElement, Long toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public LongArraySet headSet(Long toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public LongArraySet tailSet(Long fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public Long first() {
+        return firstLong();
+    }
+
+    @Override
+    public Long last() {
+        return lastLong();
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+}
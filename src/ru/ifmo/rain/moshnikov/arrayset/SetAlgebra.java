@@ -0,0 +1,219 @@
+package ru.ifmo.rain.moshnikov.arrayset;
+
+import java.util.Comparator;
+import java.util.concurrent.RecursiveAction;
+
+//Union, intersection and differences of two sorted arrays without duplicates, in one merge pass.
+//When one side is much smaller, runs of the larger one are skipped or copied by galloping (exponential then binary
+//search) instead of stepping, so a small set against a huge one costs about small * log(huge / small) comparisons.
+//Large inputs are split at matching pivots and merged in parallel.
+class SetAlgebra {
+
+    enum Operation {
+        UNION(true, true, true),
+        INTERSECTION(false, false, true),
+        DIFFERENCE(true, false, false),
+        SYMMETRIC_DIFFERENCE(true, true, false);
+
+        //which elements go to the result: only in the first, only in the second, in both (the first's one)
+        private final boolean first;
+        private final boolean second;
+        private final boolean both;
+
+        Operation(boolean first, boolean second, boolean both) {
+            this.first = first;
+            this.second = second;
+            this.both = both;
+        }
+
+        private int bound(int firstSize, int secondSize) {
+            return (first ? firstSize : 0) + (second ? secondSize : 0)
+                    + (both && !first && !second ? Math.min(firstSize, secondSize) : 0);
+        }
+    }
+
+    //gallop when one side is this many times larger
+    private static final int GALLOP_RATIO = 16;
+    //below it a parallel merge only pays for splitting
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private final Operation operation;
+    private final Comparator<Object> comparator;
+
+    @SuppressWarnings("unchecked")
+    SetAlgebra(Operation operation, Comparator<?> comparator) {
+        this.operation = operation;
+        this.comparator = (Comparator<Object>) comparator;
+    }
+
+    //a[aFrom, aTo) with b[bFrom, bTo)
+    Object[] apply(Object[] a, int aFrom, int aTo, Object[] b, int bFrom, int bTo) {
+        Part root = new Part(a, aFrom, aTo, b, bFrom, bTo);
+        root.invoke();
+        Object[] result = new Object[root.size];
+        root.copyTo(result, 0);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object first, Object second) {
+        if (comparator == null) {
+            return ((Comparable<Object>) first).compareTo(second);
+        }
+        return comparator.compare(first, second);
+    }
+
+    //first index in [from, to) with an element not less than key
+    private int lowerBound(Object[] elements, int from, int to, Object key) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (compare(elements[mid], key) < 0) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    //same as lowerBound, in time logarithmic in the distance from from rather than in the length
+    private int gallop(Object[] elements, int from, int to, Object key) {
+        int step = 1;
+        int low = from;
+        while (low + step - 1 < to && compare(elements[low + step - 1], key) < 0) {
+            low += step;
+            step *= 2;
+        }
+        return lowerBound(elements, low, Math.min(low + step - 1, to), key);
+    }
+
+    private int merge(Object[] a, int aFrom, int aTo, Object[] b, int bFrom, int bTo, Object[] out) {
+        int n = 0;
+        int i = aFrom;
+        int j = bFrom;
+        while (i < aTo && j < bTo) {
+            int c = compare(a[i], b[j]);
+            if (c < 0) {
+                if (operation.first) {
+                    out[n++] = a[i];
+                }
+                i++;
+            } else if (c > 0) {
+                if (operation.second) {
+                    out[n++] = b[j];
+                }
+                j++;
+            } else {
+                if (operation.both) {
+                    out[n++] = a[i];
+                }
+                i++;
+                j++;
+            }
+        }
+        return tails(a, i, aTo, b, j, bTo, out, n);
+    }
+
+    private int gallopingMerge(Object[] a, int aFrom, int aTo, Object[] b, int bFrom, int bTo, Object[] out) {
+        int n = 0;
+        int i = aFrom;
+        int j = bFrom;
+        while (i < aTo && j < bTo) {
+            int k = gallop(a, i, aTo, b[j]);
+            n = copy(operation.first, a, i, k, out, n);
+            i = k;
+            if (i == aTo) {
+                break;
+            }
+            k = gallop(b, j, bTo, a[i]);
+            n = copy(operation.second, b, j, k, out, n);
+            j = k;
+            if (j < bTo && compare(a[i], b[j]) == 0) {
+                if (operation.both) {
+                    out[n++] = a[i];
+                }
+                i++;
+                j++;
+            }
+        }
+        return tails(a, i, aTo, b, j, bTo, out, n);
+    }
+
+    private int tails(Object[] a, int i, int aTo, Object[] b, int j, int bTo, Object[] out, int n) {
+        n = copy(operation.first, a, i, aTo, out, n);
+        return copy(operation.second, b, j, bTo, out, n);
+    }
+
+    private static int copy(boolean keep, Object[] from, int start, int end, Object[] out, int n) {
+        if (!keep) {
+            return n;
+        }
+        System.arraycopy(from, start, out, n, end - start);
+        return n + end - start;
+    }
+
+    //a[aFrom, aTo) with b[bFrom, bTo): merged at once if small, else split at the middle of the larger side
+    //and the position of that element in the other, so equal elements land in the same half
+    @SuppressWarnings("serial") //never serialized
+    private class Part extends RecursiveAction {
+
+        private final Object[] a;
+        private final int aFrom;
+        private final int aTo;
+        private final Object[] b;
+        private final int bFrom;
+        private final int bTo;
+        private Object[] result;
+        private int size;
+        private Part left;
+        private Part right;
+
+        private Part(Object[] a, int aFrom, int aTo, Object[] b, int bFrom, int bTo) {
+            this.a = a;
+            this.aFrom = aFrom;
+            this.aTo = aTo;
+            this.b = b;
+            this.bFrom = bFrom;
+            this.bTo = bTo;
+        }
+
+        @Override
+        protected void compute() {
+            int aSize = aTo - aFrom;
+            int bSize = bTo - bFrom;
+            if (aSize + bSize < PARALLEL_THRESHOLD) {
+                result = new Object[operation.bound(aSize, bSize)];
+                if (Math.min(aSize, bSize) * (long) GALLOP_RATIO < Math.max(aSize, bSize)) {
+                    size = gallopingMerge(a, aFrom, aTo, b, bFrom, bTo, result);
+                } else {
+                    size = merge(a, aFrom, aTo, b, bFrom, bTo, result);
+                }
+                return;
+            }
+            int aSplit;
+            int bSplit;
+            if (aSize >= bSize) {
+                aSplit = (aFrom + aTo) >>> 1;
+                bSplit = lowerBound(b, bFrom, bTo, a[aSplit]);
+            } else {
+                bSplit = (bFrom + bTo) >>> 1;
+                aSplit = lowerBound(a, aFrom, aTo, b[bSplit]);
+            }
+            left = new Part(a, aFrom, aSplit, b, bFrom, bSplit);
+            right = new Part(a, aSplit, aTo, b, bSplit, bTo);
+            invokeAll(left, right);
+            size = left.size + right.size;
+        }
+
+        private void copyTo(Object[] out, int at) {
+            if (result != null) {
+                System.arraycopy(result, 0, out, at, size);
+            } else {
+                left.copyTo(out, at);
+                right.copyTo(out, at + left.size);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,53 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+
+import static ru.ifmo.rain.moshnikov.walk.Logger.error;
+
+// Archive-transparent walks (--archives): zip and jar files are opened through the zip FileSystem provider and
+// their entries are written after the archive's own line as "<archive>!<entry path>", e.g. "lib/a.jar!/META-INF/MANIFEST.MF".
+// Entries are hashed from the inflating stream, nothing is extracted. Archives inside archives are not opened.
+class Archives {
+
+    static final String SEPARATOR = "!";
+
+    private Archives() {
+    }
+
+    static boolean isArchive(Path file, BasicFileAttributes attrs) {
+        if (!attrs.isRegularFile() || file.getFileSystem() != FileSystems.getDefault() || file.getFileName() == null) {
+            return false;
+        }
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".zip") || name.endsWith(".jar");
+    }
+
+    // null when the file cannot be read as an archive, then only its own line is written
+    static FileSystem open(Path file) {
+        try {
+            return FileSystems.newFileSystem(file, (ClassLoader) null);
+        } catch (IOException | ProviderNotFoundException | SecurityException e) {
+            error(e, "Unable to open archive '" + file + "', its entries are skipped");
+            return null;
+        }
+    }
+
+    static void close(FileSystem archive, Path file) {
+        try {
+            archive.close();
+        } catch (IOException e) {
+            error(e, "Error when closing archive '" + file + "'");
+        }
+    }
+
+    static String entryName(String archive, Path entry) {
+        return archive + SEPARATOR + entry;
+    }
+
+}
@@ -0,0 +1,277 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static ru.ifmo.rain.moshnikov.walk.Logger.error;
+
+// Hashes through AsynchronousFileChannel (--async <reads>): the calling thread only lists directories and starts
+// files, at most reads chunk reads are in flight over all files and up to READS_PER_FILE of them for one file.
+// Chunks of a file complete in any order and are fed to the hash in file order. Lines are written in walk order
+// as soon as everything before them is done, the same lines the sequential walk writes. A file met again
+// under another path (same file key) while it is being read is read once, finished reads are forgotten.
+// The JDK runs Unix async file reads on the channel's executor, there threads bounds the reads that really overlap,
+// without a thread count there is one thread per read in flight.
+class AsyncWalker implements Walker {
+
+    private static final int CHUNK = 1 << 16;
+    private static final int READS_PER_FILE = 4;
+    // finished lines that may wait behind an unfinished one, per read
+    private static final int PENDING_PER_READ = 16;
+
+    private final ManifestOutput out;
+    private final HashAlgorithm algorithm;
+    private final int reads;
+    private final Semaphore slots;
+    private final ExecutorService executor;
+    private final Set<OpenOption> options = Set.of(StandardOpenOption.READ);
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    // added by the walking thread, removed by the completing one
+    private final Map<Object, CompletableFuture<Long>> byKey = new ConcurrentHashMap<>();
+    private final Deque<Line> pending = new ArrayDeque<>();
+    private final int maxPending;
+
+    private final SimpleFileVisitor<Path> visitor = new SimpleFileVisitor<>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            Object key = attrs.fileKey();
+            CompletableFuture<Long> hash = key == null ? null : byKey.get(key);
+            if (hash == null) {
+                // not started inside computeIfAbsent: start may wait for a slot that a completion removing
+                // its own key would have to release
+                CompletableFuture<Long> started = start(file, attrs.size());
+                if (key != null) {
+                    byKey.put(key, started);
+                    started.whenComplete((result, e) -> byKey.remove(key, started));
+                }
+                hash = started;
+            }
+            add(file.toString(), hash);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+            error(exc, "Failed to access file/directory '" + file + "'");
+            add(file.toString(), CompletableFuture.completedFuture(0L));
+            return FileVisitResult.CONTINUE;
+        }
+    };
+
+    // threads == 0 gives every read in flight its own thread
+    AsyncWalker(ManifestOutput out, HashAlgorithm algorithm, int reads, int threads) {
+        this.out = out;
+        this.algorithm = algorithm;
+        this.reads = reads;
+        this.slots = new Semaphore(reads);
+        this.executor = Executors.newFixedThreadPool(threads == 0 ? reads : threads, task -> {
+            Thread thread = new Thread(task, "walk-async");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxPending = reads * PENDING_PER_READ;
+    }
+
+    @Override
+    public void walk(String root) throws IOException {
+        try { // path
+            Path rootPath = Paths.get(root);
+            try {
+                Files.walkFileTree(rootPath, visitor);
+            } catch (SecurityException e) {
+                error(e, "Unable to access file/directory '" + root + "'");
+            }
+        } catch (InvalidPathException e) { // path
+            error(e, "Invalid input path '" + root + "'");
+            add(root, CompletableFuture.completedFuture(0L));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            while (!pending.isEmpty()) {
+                writeHead();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void add(String path, CompletableFuture<Long> hash) throws IOException {
+        pending.add(new Line(path, hash));
+        while (!pending.isEmpty() && (pending.peek().hash.isDone() || pending.size() > maxPending)) {
+            writeHead();
+        }
+    }
+
+    private void writeHead() throws IOException {
+        Line line = pending.remove();
+        out.write(line.hash.join(), line.path);
+    }
+
+    // blocks while all read slots are taken, which keeps the walk from running far ahead of the reads
+    private CompletableFuture<Long> start(Path file, long size) {
+        int fileReads = (int) Math.max(1, Math.min(Math.min(READS_PER_FILE, reads), (size + CHUNK - 1) / CHUNK));
+        slots.acquireUninterruptibly(fileReads);
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(file, options, executor);
+        } catch (IOException | SecurityException | UnsupportedOperationException e) {
+            slots.release(fileReads);
+            result.complete(FnvFileHasher.failed(file, e));
+            return result;
+        }
+        new FileRead(file, channel, fileReads, result).start();
+        return result;
+    }
+
+    private ByteBuffer buffer() {
+        ByteBuffer buffer = buffers.poll();
+        return buffer == null ? ByteBuffer.allocateDirect(CHUNK) : buffer.clear();
+    }
+
+    // chunk i is bytes [i * CHUNK, (i + 1) * CHUNK), chunks fed..issued-1 are in flight or waiting to be fed
+    private class FileRead {
+
+        private final Path file;
+        private final AsynchronousFileChannel channel;
+        private final int fileReads;
+        private final CompletableFuture<Long> result;
+        private final HashAlgorithm.State state = algorithm.newState();
+        private final ByteBuffer[] ready;
+        private long issued;
+        private long fed;
+        private int inFlight;
+        private boolean eof;
+        private Throwable failure;
+        private boolean finished;
+
+        private FileRead(Path file, AsynchronousFileChannel channel, int fileReads, CompletableFuture<Long> result) {
+            this.file = file;
+            this.channel = channel;
+            this.fileReads = fileReads;
+            this.result = result;
+            this.ready = new ByteBuffer[fileReads];
+        }
+
+        private synchronized void start() {
+            for (int i = 0; i < fileReads; i++) {
+                issue(buffer());
+            }
+        }
+
+        private void issue(ByteBuffer buffer) {
+            inFlight++;
+            read(new Chunk(issued++), buffer.clear());
+        }
+
+        private void read(Chunk chunk, ByteBuffer buffer) {
+            try {
+                channel.read(buffer, chunk.index * CHUNK + buffer.position(), buffer, chunk);
+            } catch (RuntimeException e) { // a closed executor or channel
+                chunk.failed(e, buffer);
+            }
+        }
+
+        private synchronized void completed(long index, ByteBuffer buffer, boolean end) {
+            inFlight--;
+            eof |= end;
+            if (failure != null) {
+                buffers.add(buffer);
+            } else {
+                ready[(int) (index % fileReads)] = buffer;
+                ByteBuffer next;
+                while ((next = ready[(int) (fed % fileReads)]) != null) {
+                    ready[(int) (fed % fileReads)] = null;
+                    fed++;
+                    state.update(next.flip());
+                    if (eof) {
+                        buffers.add(next);
+                    } else {
+                        issue(next);
+                    }
+                }
+            }
+            finishIfDone();
+        }
+
+        private synchronized void failed(Throwable e, ByteBuffer buffer) {
+            inFlight--;
+            if (failure == null) {
+                failure = e;
+            }
+            buffers.add(buffer);
+            finishIfDone();
+        }
+
+        private void finishIfDone() {
+            if (inFlight > 0 || finished) {
+                return;
+            }
+            finished = true;
+            for (ByteBuffer buffer : ready) {
+                if (buffer != null) {
+                    buffers.add(buffer);
+                }
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            slots.release(fileReads);
+            if (failure == null) {
+                result.complete(state.digest());
+            } else {
+                Exception e = failure instanceof Exception ? (Exception) failure : new IOException(failure);
+                result.complete(FnvFileHasher.failed(file, e));
+            }
+        }
+
+        // a short read goes on into the same chunk, the chunk is done when it is full or the file ended
+        private class Chunk implements CompletionHandler<Integer, ByteBuffer> {
+
+            private final long index;
+
+            private Chunk(long index) {
+                this.index = index;
+            }
+
+            @Override
+            public void completed(Integer read, ByteBuffer buffer) {
+                if (read >= 0 && buffer.hasRemaining()) {
+                    read(this, buffer);
+                } else {
+                    FileRead.this.completed(index, buffer, read < 0);
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, ByteBuffer buffer) {
+                FileRead.this.failed(e, buffer);
+            }
+
+        }
+
+    }
+
+    private static class Line {
+
+        private final String path;
+        private final CompletableFuture<Long> hash;
+
+        private Line(String path, CompletableFuture<Long> hash) {
+            this.path = path;
+            this.hash = hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,168 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntBinaryOperator;
+
+// Collects the lines of a walk and writes them as a binary manifest on close, for MappedManifest to query.
+// Everything is big-endian, offsets are absolute unless noted:
+//   header:     MAGIC, VERSION, algorithm name length, algorithm name (UTF-8)
+//   records:    count records sorted by path (UTF-8 bytes, unsigned), RECORD_SIZE bytes each:
+//               hash, path offset in the string table, path length
+//   hash index: count record numbers sorted by unsigned hash, then record number
+//   strings:    the paths in record order
+//   footer:     records offset, hash index offset, strings offset, count, MAGIC
+// Lines of one path keep their walk order, so the last of them is the last record.
+// Paths are kept in CHUNK-sized arrays, none of them split between two, so the table may outgrow one array.
+class BinaryManifestWriter implements ManifestOutput {
+
+    static final int MAGIC = 0x46564d42;
+    static final int VERSION = 1;
+    static final int RECORD_SIZE = 8 + 8 + 4;
+    static final int FOOTER_SIZE = 8 + 8 + 8 + 4 + 4;
+
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+
+    private final OutputStream out;
+    private final HashAlgorithm algorithm;
+    private final List<byte[]> chunks = new ArrayList<>();
+    private int chunkSize;
+    // chunk number << CHUNK_BITS | offset in the chunk
+    private long[] starts = new long[1 << 10];
+    private int[] lengths = new int[1 << 10];
+    private long[] hashes = new long[1 << 10];
+    private int count;
+
+    BinaryManifestWriter(OutputStream out, HashAlgorithm algorithm) {
+        this.out = out;
+        this.algorithm = algorithm;
+    }
+
+    @Override
+    public void write(long hash, String path) throws IOException {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > CHUNK) {
+            throw new IOException("Path too long for a binary manifest: " + path);
+        }
+        if (chunks.isEmpty() || chunkSize + bytes.length > CHUNK) {
+            chunks.add(new byte[CHUNK]);
+            chunkSize = 0;
+        }
+        System.arraycopy(bytes, 0, chunks.get(chunks.size() - 1), chunkSize, bytes.length);
+        if (count == hashes.length) {
+            int capacity = count + (count >> 1);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        starts[count] = (long) (chunks.size() - 1) << CHUNK_BITS | chunkSize;
+        lengths[count] = bytes.length;
+        hashes[count++] = hash;
+        chunkSize += bytes.length;
+    }
+
+    // records have no room for markers, binary output is only written for plain walks
+    @Override
+    public void write(char marker, long hash, String path) throws IOException {
+        write(hash, path);
+    }
+
+    @Override
+    public void writeBlankLine() {
+    }
+
+    // nothing can be written before the whole walk is known
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16))) {
+            int[] byPath = identity(count);
+            sort(byPath, (a, b) -> Arrays.compareUnsigned(
+                    chunk(a), offset(a), offset(a) + lengths[a], chunk(b), offset(b), offset(b) + lengths[b]));
+
+            byte[] name = algorithm.name().getBytes(StandardCharsets.UTF_8);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(name.length);
+            data.write(name);
+
+            long records = data.size();
+            long offset = 0;
+            for (int i : byPath) {
+                data.writeLong(hashes[i]);
+                data.writeLong(offset);
+                data.writeInt(lengths[i]);
+                offset += lengths[i];
+            }
+
+            long hashIndex = records + (long) count * RECORD_SIZE;
+            int[] byHash = identity(count);
+            sort(byHash, (a, b) -> Long.compareUnsigned(hashes[byPath[a]], hashes[byPath[b]]));
+            for (int record : byHash) {
+                data.writeInt(record);
+            }
+
+            long stringsOffset = hashIndex + (long) count * 4;
+            for (int i : byPath) {
+                data.write(chunk(i), offset(i), lengths[i]);
+            }
+
+            data.writeLong(records);
+            data.writeLong(hashIndex);
+            data.writeLong(stringsOffset);
+            data.writeInt(count);
+            data.writeInt(MAGIC);
+        }
+    }
+
+    private byte[] chunk(int i) {
+        return chunks.get((int) (starts[i] >>> CHUNK_BITS));
+    }
+
+    private int offset(int i) {
+        return (int) starts[i] & (CHUNK - 1);
+    }
+
+    private static int[] identity(int size) {
+        int[] indices = new int[size];
+        Arrays.setAll(indices, i -> i);
+        return indices;
+    }
+
+    // bottom-up merge sort, stable so equal paths and hashes keep their walk order
+    private static void sort(int[] indices, IntBinaryOperator order) {
+        int n = indices.length;
+        int[] from = indices;
+        int[] to = new int[n];
+        for (int width = 1; width < n; width = width < n - width ? 2 * width : n) {
+            int low = 0;
+            while (low < n) {
+                int middle = low + Math.min(width, n - low);
+                int high = middle + Math.min(width, n - middle);
+                int i = low;
+                int j = middle;
+                for (int k = low; k < high; k++) {
+                    to[k] = j == high || i < middle && order.applyAsInt(from[i], from[j]) <= 0 ? from[i++] : from[j++];
+                }
+                low = high;
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != indices) {
+            System.arraycopy(from, 0, indices, 0, n);
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+
+// Merkle hash of a directory: its entries sorted by name, each fed to the walk's algorithm as
+// name length, UTF-8 name and the entry's hash, so it only changes when something below it changes.
+// Directory lines are written after their content, with a trailing separator to tell them from files.
+class DirectoryHash {
+
+    private DirectoryHash() {
+    }
+
+    static long hash(HashAlgorithm algorithm, List<Entry> entries) {
+        entries.sort(Comparator.comparing(entry -> entry.name));
+        HashAlgorithm.State state = algorithm.newState();
+        for (Entry entry : entries) {
+            byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer bytes = ByteBuffer.allocate(Integer.BYTES + name.length + Long.BYTES);
+            bytes.putInt(name.length).put(name).putLong(entry.hash).flip();
+            state.update(bytes);
+        }
+        return state.digest();
+    }
+
+    static String line(Path dir) {
+        String path = dir.toString();
+        return path.endsWith(File.separator) ? path : path + File.separator;
+    }
+
+    static boolean isDirectoryLine(String path) {
+        return path.endsWith(File.separator);
+    }
+
+    static class Entry {
+
+        private final String name;
+        private final long hash;
+
+        Entry(Path path, long hash) {
+            Path name = path.getFileName();
+            this.name = name == null ? path.toString() : name.toString();
+            this.hash = hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,173 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+import static ru.ifmo.rain.moshnikov.walk.Logger.error;
+
+// Finds duplicate files instead of listing every file. Files are grouped by size first and only sizes
+// that occur more than once are read: a hash of the first PREFIX_SIZE bytes splits the group further,
+// and just the files that still collide are hashed completely. Every cluster of equal files is written
+// as its "<hash> <path>" lines followed by a blank line, in the order the clusters were first seen.
+// Hard links are one candidate: deleting one of them reclaims nothing, so they never make a cluster by themselves.
+// The other links of a clustered file follow its line as "= <hash> <path>".
+class DuplicateWalker implements Walker {
+
+    private static final long PREFIX_SIZE = 1 << 12;
+    static final char LINK = '=';
+
+    private final ManifestOutput out;
+    private final FileHashProvider hashes;
+    private final NestedRoots nested;
+    private final WalkStats stats;
+    private final Set<Path> walkedRoots = new HashSet<>();
+    private final ForkJoinPool pool;
+    private final Map<Long, List<Candidate>> bySize = new LinkedHashMap<>();
+    private final Map<Object, Candidate> byKey = new HashMap<>();
+    private final SimpleFileVisitor<Path> collector = new SimpleFileVisitor<>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (!attrs.isRegularFile()) {
+                return FileVisitResult.CONTINUE;
+            }
+            Object key = attrs.fileKey();
+            Candidate linked = key == null ? null : byKey.get(key);
+            if (linked != null) {
+                linked.addLink(file);
+                return FileVisitResult.CONTINUE;
+            }
+            Candidate candidate = new Candidate(file, attrs);
+            if (key != null) {
+                byKey.put(key, candidate);
+            }
+            bySize.computeIfAbsent(attrs.size(), size -> new ArrayList<>()).add(candidate);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+            error(exc, "Failed to access file/directory '" + file + "'");
+            return FileVisitResult.CONTINUE;
+        }
+    };
+
+    // threads == 0 hashes in the calling thread
+    DuplicateWalker(ManifestOutput out, FileHashProvider hashes, int threads, NestedRoots nested, WalkStats stats) {
+        this.out = out;
+        this.hashes = hashes;
+        this.nested = nested;
+        this.stats = stats;
+        this.pool = threads == 0 ? null : ParallelWalker.newPool(threads);
+    }
+
+    @Override
+    public void walk(String root) {
+        try { // path
+            Path rootPath = Paths.get(root);
+            Path absolute = NestedRoots.absolute(rootPath);
+            // a file is a candidate once, however many roots reach it
+            if (!nested.isInsideOther(absolute) && walkedRoots.add(absolute)) {
+                Files.walkFileTree(rootPath, collector);
+            }
+        } catch (InvalidPathException e) { // path
+            error(e, "Invalid input path '" + root + "'");
+        } catch (SecurityException | IOException e) {
+            error(e, "Unable to access file/directory '" + root + "'");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            for (Map.Entry<Long, List<Candidate>> group : bySize.entrySet()) {
+                if (group.getValue().size() > 1) {
+                    writeClusters(group.getKey(), group.getValue());
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private void writeClusters(long size, List<Candidate> sameSize) throws IOException {
+        HashAlgorithm algorithm = hashes.algorithm();
+        for (List<Candidate> samePrefix : split(sameSize, c -> prefixHash(c.file, size, algorithm))) {
+            // the prefix of a small file is the file itself
+            List<List<Candidate>> clusters = size <= PREFIX_SIZE
+                    ? List.of(samePrefix)
+                    : split(samePrefix, c -> hashes.hash(c.file, c.attrs));
+            for (List<Candidate> cluster : clusters) {
+                for (Candidate candidate : cluster) {
+                    out.write(candidate.hash, candidate.file.toString());
+                    for (Path link : candidate.links) {
+                        out.write(LINK, candidate.hash, link.toString());
+                    }
+                }
+                out.writeBlankLine();
+            }
+        }
+    }
+
+    private long prefixHash(Path file, long size, HashAlgorithm algorithm) {
+        long hash = FnvFileHasher.hashPrefix(file, PREFIX_SIZE, algorithm);
+        stats.read(Math.min(size, PREFIX_SIZE));
+        return hash;
+    }
+
+    // groups of at least two candidates with equal hashes, 0 is a read failure and never matches
+    private List<List<Candidate>> split(List<Candidate> candidates, ToLongFunction<Candidate> hash) throws IOException {
+        hashAll(candidates, hash);
+        return candidates.stream()
+                .filter(c -> c.hash != 0)
+                .collect(Collectors.groupingBy(c -> c.hash, LinkedHashMap::new, Collectors.toList()))
+                .values().stream()
+                .filter(cluster -> cluster.size() > 1)
+                .collect(Collectors.toList());
+    }
+
+    private void hashAll(List<Candidate> candidates, ToLongFunction<Candidate> hash) throws IOException {
+        if (pool == null) {
+            candidates.forEach(c -> c.hash = hash.applyAsLong(c));
+            return;
+        }
+        try {
+            pool.submit(() -> candidates.parallelStream().forEach(c -> c.hash = hash.applyAsLong(c))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing duplicate candidates", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error when hashing duplicate candidates", e.getCause());
+        }
+    }
+
+    private static class Candidate {
+
+        private final Path file;
+        private final BasicFileAttributes attrs;
+        // the other paths of the same file, in the order they were reached
+        private List<Path> links = List.of();
+        private long hash;
+
+        private Candidate(Path file, BasicFileAttributes attrs) {
+            this.file = file;
+            this.attrs = attrs;
+        }
+
+        private void addLink(Path link) {
+            if (links.isEmpty()) {
+                links = new ArrayList<>();
+            }
+            links.add(link);
+        }
+
+    }
+
+}
@@ -0,0 +1,44 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+// where visitors take the hash of a regular file from
+interface FileHashProvider {
+
+    HashAlgorithm algorithm();
+
+    // throws when the file could not be read, without reporting it: a provider wrapping another one
+    // sees the failure and not only a hash of 0
+    long read(Path file, BasicFileAttributes attrs) throws IOException;
+
+    // reports a failed read and hashes it as 0
+    default long hash(Path file, BasicFileAttributes attrs) {
+        try {
+            return read(file, attrs);
+        } catch (IOException | SecurityException e) {
+            return FnvFileHasher.failed(file, e);
+        }
+    }
+
+    // ManifestWriter marker for the line of a file, attrs is null for files that failed to be read
+    default char marker(BasicFileAttributes attrs) {
+        return ManifestWriter.NO_MARKER;
+    }
+
+    static FileHashProvider direct(HashAlgorithm algorithm) {
+        return new FileHashProvider() {
+            @Override
+            public HashAlgorithm algorithm() {
+                return algorithm;
+            }
+
+            @Override
+            public long read(Path file, BasicFileAttributes attrs) throws IOException {
+                return FnvFileHasher.read(file, algorithm);
+            }
+        };
+    }
+
+}
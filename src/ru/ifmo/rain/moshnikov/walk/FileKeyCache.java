@@ -0,0 +1,89 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// Reads every physical file once per run: hashes are remembered by BasicFileAttributes.fileKey() (device and
+// inode on Unix), so hard links and paths reached from overlapping roots reuse the first result.
+// A thread that meets a file another thread is still hashing waits for that result instead of reading it too.
+// The first KEEP_ALL finished hashes are all kept. Beyond that a hash is only kept while the file can still be met
+// under another path: it has more than one link or lies in a subtree that is walked more than once. Everything else
+// is dropped, so memory follows the hard links rather than every file of the run. The link count costs a stat of
+// its own, which small runs never pay.
+class FileKeyCache implements FileHashProvider {
+
+    // some 100 bytes each
+    private static final long KEEP_ALL = 1 << 18;
+
+    private final FileHashProvider hasher;
+    private final NestedRoots nested;
+    private final ConcurrentHashMap<Object, FutureTask<Long>> hashes = new ConcurrentHashMap<>();
+
+    FileKeyCache(FileHashProvider hasher, NestedRoots nested) {
+        this.hasher = hasher;
+        this.nested = nested;
+    }
+
+    @Override
+    public HashAlgorithm algorithm() {
+        return hasher.algorithm();
+    }
+
+    @Override
+    public char marker(BasicFileAttributes attrs) {
+        return hasher.marker(attrs);
+    }
+
+    @Override
+    public long read(Path file, BasicFileAttributes attrs) throws IOException {
+        Object key = attrs.fileKey();
+        if (key == null) {
+            return hasher.read(file, attrs);
+        }
+        FutureTask<Long> task = new FutureTask<>(() -> hasher.read(file, attrs));
+        FutureTask<Long> existing = hashes.putIfAbsent(key, task);
+        if (existing == null) {
+            task.run();
+            existing = task;
+            if (!mayMeetAgain(file)) {
+                hashes.remove(key, task);
+            }
+        }
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the hash of '" + file + "'");
+        } catch (ExecutionException e) { // every path sharing the file reports the failure as its own
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private boolean mayMeetAgain(Path file) {
+        if (hashes.mappingCount() <= KEEP_ALL) {
+            return true;
+        }
+        if (nested.anyShared() && nested.isUnderShared(NestedRoots.absolute(file))) {
+            return true;
+        }
+        try {
+            return (Integer) Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS) > 1;
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException | SecurityException e) {
+            return false; // without a link count only concurrent readers share the result
+        }
+    }
+
+}
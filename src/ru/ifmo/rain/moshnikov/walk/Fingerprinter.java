@@ -0,0 +1,95 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Quick fingerprints for spot checks: a file larger than FULL_LIMIT is hashed from its size and SAMPLE_SIZE bytes
+// at its start, middle and end ('S' lines), smaller files are hashed as usual ('F' lines), and so are failures
+// and invalid roots with a hash of 0.
+// With escalation, files whose fingerprints collide are hashed completely after the walk and appended
+// as 'F' lines, which supersede their earlier 'S' lines. Sampled reads go through the store limits if there are any.
+class Fingerprinter implements FileHashProvider {
+
+    static final char SAMPLED = 'S';
+    static final char FULL = 'F';
+
+    private static final int SAMPLE_SIZE = 1 << 16;
+    private static final long FULL_LIMIT = 4 * SAMPLE_SIZE;
+
+    private final FileHashProvider hasher;
+    // null without --store
+    private final StoreScheduler stores;
+    private final WalkStats stats;
+    private final Map<Long, Queue<Sampled>> sampled;
+
+    Fingerprinter(FileHashProvider hasher, StoreScheduler stores, WalkStats stats, boolean escalate) {
+        this.hasher = hasher;
+        this.stores = stores;
+        this.stats = stats;
+        this.sampled = escalate ? new ConcurrentHashMap<>() : null;
+    }
+
+    @Override
+    public HashAlgorithm algorithm() {
+        return hasher.algorithm();
+    }
+
+    @Override
+    public char marker(BasicFileAttributes attrs) {
+        return attrs != null && isSampled(attrs) ? SAMPLED : FULL;
+    }
+
+    private static boolean isSampled(BasicFileAttributes attrs) {
+        return attrs.size() > FULL_LIMIT;
+    }
+
+    @Override
+    public long read(Path file, BasicFileAttributes attrs) throws IOException {
+        if (!isSampled(attrs)) {
+            return hasher.read(file, attrs);
+        }
+        long hash = stores == null
+                ? FnvFileHasher.readSampled(file, SAMPLE_SIZE, algorithm())
+                : stores.read(file, () -> FnvFileHasher.readSampled(file, SAMPLE_SIZE, algorithm()));
+        // a failed read has thrown by now, so neither its bytes nor its hash are counted
+        stats.read(3L * SAMPLE_SIZE);
+        if (sampled != null) {
+            sampled.computeIfAbsent(hash, h -> new ConcurrentLinkedQueue<>()).add(new Sampled(file, attrs));
+        }
+        return hash;
+    }
+
+    // full hashes of every file that shares its fingerprint with another one, ordered by path
+    void writeEscalations(ManifestOutput out) throws IOException {
+        if (sampled == null) {
+            return;
+        }
+        List<Sampled> colliding = new ArrayList<>();
+        for (Queue<Sampled> files : sampled.values()) {
+            if (files.size() > 1) {
+                colliding.addAll(files);
+            }
+        }
+        colliding.sort(Comparator.comparing(file -> file.path));
+        for (Sampled file : colliding) {
+            out.write(FULL, hasher.hash(file.path, file.attrs), file.path.toString());
+        }
+    }
+
+    private static class Sampled {
+
+        private final Path path;
+        private final BasicFileAttributes attrs;
+
+        private Sampled(Path path, BasicFileAttributes attrs) {
+            this.path = path;
+            this.attrs = attrs;
+        }
+
+    }
+
+}
@@ -0,0 +1,47 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.nio.ByteBuffer;
+
+// FNV-1, the walk's original hash
+class Fnv1Hash32 implements HashAlgorithm {
+
+    private static final int FNV_PRIME = 0x01000193;
+    private static final int FNV_X0 = 0x811c9dc5;
+
+    @Override
+    public String name() {
+        return "fnv1-32";
+    }
+
+    @Override
+    public int bits() {
+        return 32;
+    }
+
+    @Override
+    public State newState() {
+        return new State() {
+            private int hash = FNV_X0;
+
+            @Override
+            public void reset() {
+                hash = FNV_X0;
+            }
+
+            @Override
+            public void update(ByteBuffer bytes) {
+                int h = hash;
+                while (bytes.hasRemaining()) {
+                    h = (h * FNV_PRIME) ^ (bytes.get() & 0xff);
+                }
+                hash = h;
+            }
+
+            @Override
+            public long digest() {
+                return hash & 0xffffffffL;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,46 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.nio.ByteBuffer;
+
+class Fnv1aHash64 implements HashAlgorithm {
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long FNV_X0 = 0xcbf29ce484222325L;
+
+    @Override
+    public String name() {
+        return "fnv1a-64";
+    }
+
+    @Override
+    public int bits() {
+        return 64;
+    }
+
+    @Override
+    public State newState() {
+        return new State() {
+            private long hash = FNV_X0;
+
+            @Override
+            public void reset() {
+                hash = FNV_X0;
+            }
+
+            @Override
+            public void update(ByteBuffer bytes) {
+                long h = hash;
+                while (bytes.hasRemaining()) {
+                    h = (h ^ (bytes.get() & 0xff)) * FNV_PRIME;
+                }
+                hash = h;
+            }
+
+            @Override
+            public long digest() {
+                return hash;
+            }
+        };
+    }
+
+}
@@ -1,39 +1,188 @@
 package ru.ifmo.rain.moshnikov.walk;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
 
 import static ru.ifmo.rain.moshnikov.walk.Logger.error;
 
 public class FnvFileHasher {
 
-    private static final int FNV_PRIME = 0x01000193;
-    private static final int FNV_X0 = 0x811c9dc5;
-
     private static final int BUF_SIZE = 0xffff;
-    private static byte[] buffer = new byte[BUF_SIZE];
-
-    public static int hash(Path path) {
-        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(path))) {
-            int hash = FNV_X0;
-            int bytesRead = 0;
-            while (bytesRead != -1) {
-                for (int i = 0; i < bytesRead; i++) {
-                    hash = (hash * FNV_PRIME) ^ (buffer[i] & 0xff);
-                }
-                bytesRead = inputStream.read(buffer);
+
+    // files of at least this size are hashed through mapped windows instead of the buffer
+    static final long MAP_THRESHOLD = 1 << 20;
+    private static final long MAP_WINDOW = 1 << 26;
+
+    private static final ThreadLocal<Map<HashAlgorithm, FnvFileHasher>> HASHERS = ThreadLocal.withInitial(HashMap::new);
+
+    // owned by a single thread, reused for every file it hashes
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUF_SIZE);
+    private final HashAlgorithm algorithm;
+    private final HashAlgorithm.State state;
+    private final long mapThreshold;
+
+    public FnvFileHasher() {
+        this(HashAlgorithm.DEFAULT);
+    }
+
+    public FnvFileHasher(HashAlgorithm algorithm) {
+        this(algorithm, MAP_THRESHOLD);
+    }
+
+    // 0 maps every file, Long.MAX_VALUE reads every file through the buffer
+    FnvFileHasher(HashAlgorithm algorithm, long mapThreshold) {
+        this.algorithm = algorithm;
+        this.state = algorithm.newState();
+        this.mapThreshold = mapThreshold;
+    }
+
+    // hashes with the calling thread's own instance, safe to call from any number of threads
+    public static long hash(Path path) {
+        return hash(path, HashAlgorithm.DEFAULT);
+    }
+
+    public static long hash(Path path, HashAlgorithm algorithm) {
+        return forThread(algorithm).hashFile(path);
+    }
+
+    public static long hashPrefix(Path path, long length, HashAlgorithm algorithm) {
+        return forThread(algorithm).hashFilePrefix(path, length);
+    }
+
+    public static long hashSampled(Path path, int sample, HashAlgorithm algorithm) {
+        return forThread(algorithm).hashFileSampled(path, sample);
+    }
+
+    // as hash and hashSampled, but a failed read is thrown instead of logged and hashed as 0
+    static long read(Path path, HashAlgorithm algorithm) throws IOException {
+        return forThread(algorithm).readFile(path);
+    }
+
+    static long readSampled(Path path, int sample, HashAlgorithm algorithm) throws IOException {
+        return forThread(algorithm).readFileSampled(path, sample);
+    }
+
+    private static FnvFileHasher forThread(HashAlgorithm algorithm) {
+        return HASHERS.get().computeIfAbsent(algorithm, FnvFileHasher::new);
+    }
+
+    public HashAlgorithm algorithm() {
+        return algorithm;
+    }
+
+    // an instance is not thread-safe: use one per thread or the static hash(Path)
+    public long hashFile(Path path) {
+        try {
+            return readFile(path);
+        } catch (IOException | SecurityException e) {
+            return failed(path, e);
+        }
+    }
+
+    private long readFile(Path path) throws IOException {
+        if (path.getFileSystem() != FileSystems.getDefault()) {
+            return readStream(path);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            state.reset();
+            if (channel.size() >= mapThreshold) {
+                hashMapped(channel);
+            } else {
+                hashRead(channel);
             }
-            return hash;
-        } catch (NoSuchFileException e) {
+            return state.digest();
+        }
+    }
+
+    // archive entries are read as they are inflated: the FileChannel of the zip provider is an extracted copy
+    private long readStream(Path path) throws IOException {
+        try (ReadableByteChannel channel = Files.newByteChannel(path)) {
+            state.reset();
+            hashRead(channel);
+            return state.digest();
+        }
+    }
+
+    // hash of the first length bytes only, the whole file if it is shorter
+    public long hashFilePrefix(Path path, long length) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            state.reset();
+            hashRange(channel, 0, length);
+            return state.digest();
+        } catch (IOException | SecurityException e) {
+            return failed(path, e);
+        }
+    }
+
+    // the size and three samples of sample bytes from the start, middle and end, read by position
+    public long hashFileSampled(Path path, int sample) {
+        try {
+            return readFileSampled(path, sample);
+        } catch (IOException | SecurityException e) {
+            return failed(path, e);
+        }
+    }
+
+    private long readFileSampled(Path path, int sample) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            state.reset();
+            buffer.clear();
+            buffer.putLong(size).flip();
+            state.update(buffer);
+            hashRange(channel, 0, sample);
+            hashRange(channel, Math.max(0, size / 2 - sample / 2), sample);
+            hashRange(channel, Math.max(0, size - sample), sample);
+            return state.digest();
+        }
+    }
+
+    private void hashRead(ReadableByteChannel channel) throws IOException {
+        buffer.clear();
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            state.update(buffer);
+            buffer.clear();
+        }
+    }
+
+    private void hashRange(FileChannel channel, long position, long length) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            buffer.clear().limit((int) Math.min(BUF_SIZE, end - position));
+            int read = channel.read(buffer, position);
+            if (read == -1) {
+                return;
+            }
+            position += read;
+            buffer.flip();
+            state.update(buffer);
+        }
+    }
+
+    // a single mapping is limited to Integer.MAX_VALUE bytes, so large files are mapped window by window
+    private void hashMapped(FileChannel channel) throws IOException {
+        long size = channel.size();
+        for (long position = 0; position < size; position += MAP_WINDOW) {
+            state.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position)));
+        }
+    }
+
+    static long failed(Path path, Exception e) {
+        if (e instanceof NoSuchFileException) {
             hasherError(e, "No such file found '" + path + "'.");
-        } catch (SecurityException e) {
+        } else if (e instanceof SecurityException) {
             hasherError(e, "Unable to access file '" + path + "'.");
-        } catch (IOException e) {
+        } else {
             hasherError(e, "Error when reading input from file '" + path + "'.");
         }
         return 0;
@@ -43,8 +192,4 @@ public class FnvFileHasher {
         error(e, message + " hash set to default: 0");
     }
 
-    public static void writeHash(BufferedWriter out, int hash, String file) throws IOException {
-        out.write(String.format("%08x %s\n", hash, file));
-    }
-
 }
\ No newline at end of file
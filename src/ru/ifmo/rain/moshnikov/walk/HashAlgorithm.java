@@ -0,0 +1,40 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+public interface HashAlgorithm {
+
+    HashAlgorithm DEFAULT = new Fnv1Hash32();
+    List<HashAlgorithm> ALGORITHMS = List.of(DEFAULT, new Fnv1aHash64(), new XxHash64());
+
+    // name on the command line and in the hash index
+    String name();
+
+    // 32 or 64, narrower hashes are returned zero-extended
+    int bits();
+
+    // a state is reused for many files by one thread
+    State newState();
+
+    static HashAlgorithm forName(String name) {
+        for (HashAlgorithm algorithm : ALGORITHMS) {
+            if (algorithm.name().equals(name)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unknown hash algorithm '" + name + "'");
+    }
+
+    interface State {
+
+        void reset();
+
+        // consumes all remaining bytes of the buffer
+        void update(ByteBuffer bytes);
+
+        long digest();
+
+    }
+
+}
@@ -0,0 +1,175 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static ru.ifmo.rain.moshnikov.walk.Logger.error;
+
+// Hashes of the previous run keyed by absolute path. A stored hash is reused only when size,
+// modification time and file key all match, everything hashed in this run replaces the file on save.
+//
+// File layout: MAGIC, VERSION, algorithm name length, algorithm name, count, then count records sorted by path:
+//   shared prefix length, suffix length, suffix bytes (UTF-8), size, modified (ns), file key length, file key, hash
+class HashIndex implements FileHashProvider {
+
+    private static final int MAGIC = 0x46564958;
+    private static final int VERSION = 2;
+
+    private final Path file;
+    private final FileHashProvider hasher;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    private HashIndex(Path file, FileHashProvider hasher, Map<String, Entry> previous) {
+        this.file = file;
+        this.hasher = hasher;
+        this.previous = previous;
+    }
+
+    static HashIndex load(Path file, FileHashProvider hasher) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (Files.exists(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), hasher.algorithm(), entries);
+            } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+                error(e, "Unable to read hash index '" + file + "', all files will be hashed");
+                entries.clear();
+            }
+        }
+        return new HashIndex(file, hasher, entries);
+    }
+
+    private static void read(ByteBuffer in, HashAlgorithm algorithm, Map<String, Entry> entries) throws IOException {
+        if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new IOException("Not a hash index");
+        }
+        byte[] name = new byte[in.getInt()];
+        in.get(name);
+        if (!algorithm.name().equals(new String(name, StandardCharsets.UTF_8))) {
+            throw new IOException("Hash index was built with another algorithm");
+        }
+        int count = in.getInt();
+        byte[] path = new byte[0];
+        for (int i = 0; i < count; i++) {
+            int shared = in.getInt();
+            byte[] next = Arrays.copyOf(path, shared + in.getInt());
+            in.get(next, shared, next.length - shared);
+            path = next;
+            long size = in.getLong();
+            long modified = in.getLong();
+            byte[] key = new byte[in.getInt()];
+            in.get(key);
+            entries.put(new String(path, StandardCharsets.UTF_8),
+                    new Entry(size, modified, new String(key, StandardCharsets.UTF_8), in.getLong()));
+        }
+    }
+
+    @Override
+    public HashAlgorithm algorithm() {
+        return hasher.algorithm();
+    }
+
+    @Override
+    public long read(Path file, BasicFileAttributes attrs) throws IOException {
+        if (file.getFileSystem() != FileSystems.getDefault()) { // archive entries have no stable absolute path
+            return hasher.read(file, attrs);
+        }
+        String path = file.toAbsolutePath().normalize().toString();
+        Entry entry = new Entry(attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), fileKey(attrs), 0);
+        Entry stored = previous.get(path);
+        if (stored != null && stored.matches(entry)) {
+            current.put(path, stored);
+            return stored.hash;
+        }
+        // a failed read throws past the put, so the file is hashed again next time
+        long hash = hasher.read(file, attrs);
+        current.put(path, entry.withHash(hash));
+        return hash;
+    }
+
+    private static String fileKey(BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        return key == null ? "" : key.toString();
+    }
+
+    // writes next to the index and renames over it, so a failed run leaves the old index intact
+    void save() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            String[] paths = current.keySet().toArray(new String[0]);
+            Arrays.sort(paths);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                byte[] name = hasher.algorithm().name().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeInt(paths.length);
+                byte[] prev = new byte[0];
+                for (String path : paths) {
+                    byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+                    int shared = Arrays.mismatch(prev, bytes);
+                    shared = shared < 0 ? bytes.length : shared;
+                    out.writeInt(shared);
+                    out.writeInt(bytes.length - shared);
+                    out.write(bytes, shared, bytes.length - shared);
+                    prev = bytes;
+
+                    Entry entry = current.get(path);
+                    byte[] key = entry.fileKey.getBytes(StandardCharsets.UTF_8);
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.modified);
+                    out.writeInt(key.length);
+                    out.write(key);
+                    out.writeLong(entry.hash);
+                }
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static class Entry {
+
+        private final long size;
+        private final long modified;
+        private final String fileKey;
+        private final long hash;
+
+        private Entry(long size, long modified, String fileKey, long hash) {
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+            this.hash = hash;
+        }
+
+        private boolean matches(Entry other) {
+            return size == other.size && modified == other.modified && fileKey.equals(other.fileKey);
+        }
+
+        private Entry withHash(long hash) {
+            return new Entry(size, modified, fileKey, hash);
+        }
+
+    }
+
+}
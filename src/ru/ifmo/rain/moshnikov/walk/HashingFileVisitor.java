@@ -1,36 +1,197 @@
 package ru.ifmo.rain.moshnikov.walk;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.file.FileSystem;
 import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
 
 import static ru.ifmo.rain.moshnikov.walk.Logger.error;
 
 public class HashingFileVisitor extends SimpleFileVisitor<Path> {
 
-    private final BufferedWriter out;
+    private final ManifestOutput out;
+    private final FileHashProvider hashes;
+    private final NestedRoots nested;
+    private final boolean merkle;
+    private final boolean archives;
+    // the archive whose entries are being walked, see Archives
+    private Path archive;
+    // entries of the directories being walked, for their Merkle hashes
+    private final Deque<List<DirectoryHash.Entry>> directories = new ArrayDeque<>();
+    // lines of shared subtrees by absolute path, replayed when the subtree is reached again
+    private final Map<Path, List<Line>> subtrees = new HashMap<>();
+    private final Deque<Recording> recordings = new ArrayDeque<>();
 
-    public HashingFileVisitor(BufferedWriter out) {
+    public HashingFileVisitor(ManifestWriter out, HashAlgorithm algorithm) {
+        this(out, FileHashProvider.direct(algorithm), NestedRoots.NONE, false, false);
+    }
+
+    HashingFileVisitor(ManifestOutput out, FileHashProvider hashes, NestedRoots nested, boolean merkle,
+                       boolean archives) {
         this.out = out;
+        this.hashes = hashes;
+        this.nested = nested;
+        this.merkle = merkle;
+        this.archives = archives;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        if (nested.anyShared()) {
+            Path absolute = NestedRoots.absolute(dir);
+            if (nested.isShared(absolute)) {
+                List<Line> lines = subtrees.get(absolute);
+                if (lines != null) {
+                    for (Line line : lines) {
+                        writeHash(dir.resolve(line.relative), line.entry, line.marker, line.hash, line.directory);
+                    }
+                    if (merkle) { // the directory's own line comes last
+                        addEntry(dir, lines.get(lines.size() - 1).hash);
+                    }
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                recordings.push(new Recording(dir, absolute));
+            }
+        }
+        if (merkle) {
+            directories.push(new ArrayList<>());
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        if (merkle) {
+            List<DirectoryHash.Entry> entries = directories.pop();
+            if (exc == null) {
+                long hash = DirectoryHash.hash(hashes.algorithm(), entries);
+                writeHash(dir, null, ManifestWriter.NO_MARKER, hash, true);
+                addEntry(dir, hash);
+            }
+        }
+        if (!recordings.isEmpty() && recordings.peek().dir.equals(dir)) {
+            Recording recording = recordings.pop();
+            if (exc == null) {
+                subtrees.put(recording.absolute, recording.lines);
+            }
+        }
+        if (exc != null) { // the listing broke off: the entries read so far stay, the directory gets an error line
+            visitFileFailed(dir, exc);
+        }
+        return FileVisitResult.CONTINUE;
     }
 
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-        return writeHash(file, FnvFileHasher.hash(file));
+        long hash;
+        char marker;
+        try {
+            hash = hashes.read(file, attrs);
+            marker = hashes.marker(attrs);
+        } catch (IOException | SecurityException e) {
+            hash = FnvFileHasher.failed(file, e);
+            marker = hashes.marker(null);
+        }
+        addEntry(file, hash);
+        writeFile(file, marker, hash);
+        if (archives && Archives.isArchive(file, attrs)) {
+            walkArchive(file);
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+    // the entries are walked by this same visitor, so shared subtrees record and replay them too
+    private void walkArchive(Path file) throws IOException {
+        FileSystem fs = Archives.open(file);
+        if (fs == null) {
+            return;
+        }
+        archive = file;
+        try {
+            for (Path root : fs.getRootDirectories()) {
+                Files.walkFileTree(root, this);
+            }
+        } finally {
+            archive = null;
+            Archives.close(fs, file);
+        }
     }
 
     @Override
     public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
         error(exc, "Failed to access file/directory '" + file + "'");
-        return writeHash(file, 0);
+        addEntry(file, 0);
+        writeFile(file, hashes.marker(null), 0);
+        return FileVisitResult.CONTINUE;
     }
 
-    private FileVisitResult writeHash(Path file, int hash) throws IOException {
-        FnvFileHasher.writeHash(out, hash, file.toString());
-        return FileVisitResult.CONTINUE;
+    // a root that ended with an exception may leave unfinished directories behind
+    void startRoot() {
+        recordings.clear();
+        directories.clear();
+    }
+
+    private void addEntry(Path path, long hash) {
+        if (merkle && !directories.isEmpty()) {
+            directories.peek().add(new DirectoryHash.Entry(path, hash));
+        }
+    }
+
+    private void writeFile(Path file, char marker, long hash) throws IOException {
+        if (archive == null) {
+            writeHash(file, null, marker, hash, false);
+        } else {
+            writeHash(archive, file.toString(), marker, hash, false);
+        }
+    }
+
+    // entry != null writes the line of that entry of the archive file
+    private void writeHash(Path file, String entry, char marker, long hash, boolean directory) throws IOException {
+        String name = file.toString();
+        if (entry != null) {
+            name = name + Archives.SEPARATOR + entry;
+        } else if (directory) {
+            name = DirectoryHash.line(file);
+        }
+        out.write(marker, hash, name);
+        for (Recording recording : recordings) {
+            recording.lines.add(new Line(recording.dir.relativize(file), entry, marker, hash, directory));
+        }
+    }
+
+    private static class Line {
+
+        private final Path relative;
+        private final String entry;
+        private final char marker;
+        private final long hash;
+        private final boolean directory;
+
+        private Line(Path relative, String entry, char marker, long hash, boolean directory) {
+            this.relative = relative;
+            this.entry = entry;
+            this.marker = marker;
+            this.hash = hash;
+            this.directory = directory;
+        }
+
+    }
+
+    private static class Recording {
+
+        private final Path dir;
+        private final Path absolute;
+        private final List<Line> lines = new ArrayList<>();
+
+        private Recording(Path dir, Path absolute) {
+            this.dir = dir;
+            this.absolute = absolute;
+        }
+
     }
 
-}
\ No newline at end of file
+}
@@ -1,17 +1,25 @@
 package ru.ifmo.rain.moshnikov.walk;
 
 import java.io.PrintStream;
+import java.util.concurrent.atomic.LongAdder;
 
  class Logger {
 	
 	private static final PrintStream LOG_STREAM = System.out;
 	private static final boolean PRINT_STACK_TRACE = false;
+	private static final LongAdder ERRORS = new LongAdder();
 	
 	static void error(Exception e, String message) {
+		ERRORS.increment();
 		if (PRINT_STACK_TRACE) {
 			e.printStackTrace();
 		}
 		LOG_STREAM.println(message);
 	}
 	
+	// every error reported so far, for WalkStats
+	static long errors() {
+		return ERRORS.sum();
+	}
+	
 }
\ No newline at end of file
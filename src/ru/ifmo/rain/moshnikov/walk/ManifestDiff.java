@@ -0,0 +1,128 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static ru.ifmo.rain.moshnikov.walk.Logger.error;
+
+// Compares two manifests of any size with a fixed heap budget: both are sorted by path on disk one after
+// the other (see ManifestSort), in the old manifest's directory unless another one is given, and merged
+// in one pass. Prints "+ path" for added, "- path" for removed and "* path" for changed files in path order.
+// Of several lines for one path the last one counts, so escalated fingerprints replace samples.
+public class ManifestDiff {
+
+    private static final String USAGE
+            = "Usage: ManifestDiff <old manifest> <new manifest> [memory MiB [directory for sort runs]]";
+    static final long DEFAULT_MEMORY_MIB = 64;
+
+    public static void main(String[] args) {
+        if (args == null || args.length < 2 || args.length > 4 || Arrays.asList(args).contains(null)) {
+            System.out.println(USAGE);
+            return;
+        }
+        long memory;
+        try {
+            memory = Math.multiplyExact(args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_MEMORY_MIB, 1L << 20);
+        } catch (NumberFormatException | ArithmeticException e) {
+            memory = 0;
+        }
+        if (memory <= 0) {
+            System.out.println("Argument 'memory' is expected to be a positive number of MiB: " + args[2]);
+            System.out.println(USAGE);
+            return;
+        }
+        try {
+            Path before = Paths.get(args[0]);
+            Path runs = args.length > 3 ? Paths.get(args[3]) : ManifestSort.defaultDirectory(before);
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+            diff(before, Paths.get(args[1]), memory, runs, out);
+            out.flush();
+        } catch (InvalidPathException e) {
+            error(e, "Invalid manifest file or directory '" + e.getInput() + "'");
+        } catch (IOException e) {
+            error(e, "Error when comparing manifests: " + e.getMessage());
+        }
+    }
+
+    // sort runs go to runs, they are about as large as the manifests
+    static void diff(Path before, Path after, long memory, Path runs, Writer out) throws IOException {
+        Path oldSorted = ManifestSort.sort(before, memory, runs);
+        try {
+            Path newSorted = ManifestSort.sort(after, memory, runs);
+            try (BufferedReader oldIn = Files.newBufferedReader(oldSorted, StandardCharsets.UTF_8);
+                 BufferedReader newIn = Files.newBufferedReader(newSorted, StandardCharsets.UTF_8)) {
+                merge(new Cursor(oldIn), new Cursor(newIn), out);
+            } finally {
+                Files.deleteIfExists(newSorted);
+            }
+        } finally {
+            Files.deleteIfExists(oldSorted);
+        }
+    }
+
+    private static void merge(Cursor old, Cursor now, Writer out) throws IOException {
+        String a = old.next();
+        String b = now.next();
+        while (a != null || b != null) {
+            int c = a == null ? 1 : b == null ? -1 : ManifestSort.compare(a, b);
+            if (c < 0) {
+                report('-', a, out);
+                a = old.next();
+            } else if (c > 0) {
+                report('+', b, out);
+                b = now.next();
+            } else {
+                if (!hash(a).equals(hash(b))) {
+                    report('*', a, out);
+                }
+                a = old.next();
+                b = now.next();
+            }
+        }
+    }
+
+    private static String hash(String line) {
+        return line.substring(0, line.indexOf(' '));
+    }
+
+    private static void report(char kind, String line, Writer out) throws IOException {
+        out.write(kind);
+        out.write(' ');
+        out.write(line, line.indexOf(' ') + 1, line.length() - line.indexOf(' ') - 1);
+        out.write('\n');
+    }
+
+    // the last line of each run of lines with the same path
+    static class Cursor {
+
+        private final BufferedReader in;
+        private String ahead;
+
+        Cursor(BufferedReader in) throws IOException {
+            this.in = in;
+            this.ahead = in.readLine();
+        }
+
+        String next() throws IOException {
+            String line = ahead;
+            if (line == null) {
+                return null;
+            }
+            while ((ahead = in.readLine()) != null && ManifestSort.compare(line, ahead) == 0) {
+                line = ahead;
+            }
+            return line;
+        }
+
+    }
+
+}
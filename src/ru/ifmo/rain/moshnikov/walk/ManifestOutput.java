@@ -0,0 +1,18 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+// where walkers write their lines: text manifests (ManifestWriter) or binary ones (BinaryManifestWriter)
+interface ManifestOutput extends Closeable, Flushable {
+
+    void write(long hash, String path) throws IOException;
+
+    // ManifestWriter.NO_MARKER writes a plain line
+    void write(char marker, long hash, String path) throws IOException;
+
+    // separates groups of lines, such as duplicate clusters
+    void writeBlankLine() throws IOException;
+
+}
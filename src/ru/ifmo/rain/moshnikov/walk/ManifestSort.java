@@ -0,0 +1,176 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// Sorts the lines of a manifest by path with a bounded amount of memory: lines are collected until their
+// estimated size reaches the budget, sorted and spilled to a run file in the given directory, then the runs are merged
+// MAX_FAN_IN at a time until one is left. The sort is stable, so of the lines of one path the last one stays last.
+// Lines come out as "<hash> <path>": marker prefixes are dropped and blank lines skipped.
+class ManifestSort {
+
+    private static final int MAX_FAN_IN = 64;
+    private static final int BUF_SIZE = 1 << 16;
+    // a String of n chars, its array and the list slot
+    private static final int LINE_OVERHEAD = 64;
+
+    private ManifestSort() {
+    }
+
+    // a temporary file in dir, deleting it is up to the caller
+    static Path sort(Path manifest, long memory, Path dir) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        try {
+            try (BufferedReader in = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+                List<String> lines = new ArrayList<>();
+                long used = 0;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    line = stripMarker(line);
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    if (line.indexOf(' ') <= 0) {
+                        throw new IOException("Malformed line in '" + manifest + "': " + line);
+                    }
+                    lines.add(line);
+                    used += LINE_OVERHEAD + 2L * line.length();
+                    if (used >= memory) {
+                        runs.add(spill(lines, dir));
+                        lines.clear();
+                        used = 0;
+                    }
+                }
+                if (!lines.isEmpty() || runs.isEmpty()) {
+                    runs.add(spill(lines, dir));
+                }
+            }
+            while (runs.size() > 1) {
+                List<Path> merged = new ArrayList<>();
+                try {
+                    for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+                        List<Path> group = runs.subList(i, Math.min(runs.size(), i + MAX_FAN_IN));
+                        merged.add(merge(group, dir));
+                        for (Path run : group) {
+                            Files.delete(run);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) { // the runs of this level are deleted by the finally below
+                    for (Path run : merged) {
+                        Files.deleteIfExists(run);
+                    }
+                    throw e;
+                }
+                runs = merged;
+            }
+            return runs.remove(0);
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    // "S <hash> <path>" and "F <hash> <path>" of fingerprint manifests, hashes are longer than one char
+    private static String stripMarker(String line) {
+        return line.length() > 2 && line.charAt(1) == ' ' ? line.substring(2) : line;
+    }
+
+    private static Path spill(List<String> lines, Path dir) throws IOException {
+        lines.sort(ManifestSort::compare);
+        Path run = Files.createTempFile(dir, "manifest", ".run");
+        try (BufferedWriter out = newWriter(run)) {
+            for (String line : lines) {
+                out.write(line);
+                out.newLine();
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(run);
+            throw e;
+        }
+        return run;
+    }
+
+    // equal paths leave in run order, which keeps the sort stable
+    private static Path merge(List<Path> runs, Path dir) throws IOException {
+        Path result = Files.createTempFile(dir, "manifest", ".run");
+        List<Run> open = new ArrayList<>();
+        try (BufferedWriter out = newWriter(result)) {
+            PriorityQueue<Run> queue = new PriorityQueue<>((a, b) -> {
+                int c = compare(a.line, b.line);
+                return c != 0 ? c : Integer.compare(a.index, b.index);
+            });
+            for (Path path : runs) {
+                Run run = new Run(open.size(), Files.newBufferedReader(path, StandardCharsets.UTF_8));
+                open.add(run);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                out.write(run.line);
+                out.newLine();
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(result);
+            throw e;
+        } finally {
+            for (Run run : open) {
+                run.in.close();
+            }
+        }
+        return result;
+    }
+
+    // runs are as large as the manifest, which is known to fit where it is, unlike a small temporary directory
+    static Path defaultDirectory(Path manifest) {
+        return manifest.toAbsolutePath().getParent();
+    }
+
+    private static BufferedWriter newWriter(Path file) throws IOException {
+        return new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), BUF_SIZE);
+    }
+
+    // compares the paths after the hash without cutting them out
+    static int compare(String a, String b) {
+        int i = a.indexOf(' ') + 1;
+        int j = b.indexOf(' ') + 1;
+        int length = Math.min(a.length() - i, b.length() - j);
+        for (int k = 0; k < length; k++) {
+            char x = a.charAt(i + k);
+            char y = b.charAt(j + k);
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return (a.length() - i) - (b.length() - j);
+    }
+
+    private static class Run {
+
+        private final int index;
+        private final BufferedReader in;
+        private String line;
+
+        private Run(int index, BufferedReader in) {
+            this.index = index;
+            this.in = in;
+        }
+
+        private boolean advance() throws IOException {
+            line = in.readLine();
+            return line != null;
+        }
+
+    }
+
+}
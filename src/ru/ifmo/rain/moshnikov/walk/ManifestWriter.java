@@ -0,0 +1,121 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+// Writes "<hex hash> <path>\n" lines as UTF-8, byte for byte what String.format("%08x %s\n") through
+// a BufferedWriter gave, but encodes straight into one reused block that is written out when full.
+public class ManifestWriter implements ManifestOutput {
+
+    public static final char NO_MARKER = 0;
+
+    private static final int BUF_SIZE = 1 << 16;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final int digits;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUF_SIZE);
+    // an unpaired surrogate fails the write with MalformedInputException, as it did through the BufferedWriter
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    public ManifestWriter(OutputStream out, HashAlgorithm algorithm) {
+        this.out = out;
+        this.digits = algorithm.bits() / 4;
+    }
+
+    @Override
+    public void write(long hash, String path) throws IOException {
+        ensure(digits + 1);
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            buffer.put(HEX_DIGITS[(int) (hash >>> shift) & 0xf]);
+        }
+        buffer.put((byte) ' ');
+        writePath(path);
+        ensure(1);
+        buffer.put((byte) '\n');
+    }
+
+    // "<marker> <hash> <path>", for records that are not plain manifest lines; NO_MARKER writes a plain line
+    @Override
+    public void write(char marker, long hash, String path) throws IOException {
+        if (marker == NO_MARKER) {
+            write(hash, path);
+            return;
+        }
+        ensure(2);
+        buffer.put((byte) marker);
+        buffer.put((byte) ' ');
+        write(hash, path);
+    }
+
+    @Override
+    public void writeBlankLine() throws IOException {
+        ensure(1);
+        buffer.put((byte) '\n');
+    }
+
+    // ASCII is copied char by char, the encoder is only involved from the first other char on
+    private void writePath(String path) throws IOException {
+        int length = path.length();
+        for (int i = 0; i < length; i++) {
+            char c = path.charAt(i);
+            if (c >= 0x80) {
+                encode(CharBuffer.wrap(path, i, length));
+                return;
+            }
+            ensure(1);
+            buffer.put((byte) c);
+        }
+    }
+
+    private void encode(CharBuffer chars) throws IOException {
+        encoder.reset();
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                writeBuffer();
+            } else if (result.isError()) {
+                result.throwException();
+            }
+        } while (!result.isUnderflow());
+        while (encoder.flush(buffer).isOverflow()) {
+            writeBuffer();
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            writeBuffer();
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+}
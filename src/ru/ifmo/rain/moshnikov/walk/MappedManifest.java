@@ -0,0 +1,208 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
+
+import static ru.ifmo.rain.moshnikov.walk.Logger.error;
+
+// Read side of a binary manifest (see BinaryManifestWriter). The file is mapped, not read: a lookup is a binary
+// search over the records or the hash index and touches only the pages it compares against.
+// Sections are mapped in windows of whole units, so files larger than one mapping work too.
+public class MappedManifest implements Closeable {
+
+    private static final String USAGE = "Usage: MappedManifest <binary manifest> path <path> | hash <hex hash>";
+
+    private final FileChannel channel;
+    private final String algorithm;
+    private final int count;
+    private final Region records;
+    private final Region hashIndex;
+    private final Region strings;
+
+    private MappedManifest(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        if (size < BinaryManifestWriter.FOOTER_SIZE) {
+            throw new IOException("Not a binary manifest");
+        }
+        ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY,
+                size - BinaryManifestWriter.FOOTER_SIZE, BinaryManifestWriter.FOOTER_SIZE);
+        long recordsOffset = footer.getLong();
+        long hashIndexOffset = footer.getLong();
+        long stringsOffset = footer.getLong();
+        count = footer.getInt();
+        if (footer.getInt() != BinaryManifestWriter.MAGIC) {
+            throw new IOException("Not a binary manifest");
+        }
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, recordsOffset);
+        if (header.getInt() != BinaryManifestWriter.MAGIC || header.getInt() != BinaryManifestWriter.VERSION) {
+            throw new IOException("Unsupported binary manifest version");
+        }
+        byte[] name = new byte[header.getInt()];
+        header.get(name);
+        algorithm = new String(name, StandardCharsets.UTF_8);
+        records = new Region(channel, recordsOffset, hashIndexOffset - recordsOffset, BinaryManifestWriter.RECORD_SIZE);
+        hashIndex = new Region(channel, hashIndexOffset, stringsOffset - hashIndexOffset, 4);
+        strings = new Region(channel, stringsOffset, size - BinaryManifestWriter.FOOTER_SIZE - stringsOffset, 1);
+    }
+
+    public static MappedManifest open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new MappedManifest(channel);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Malformed binary manifest", e);
+        }
+    }
+
+    public String algorithm() {
+        return algorithm;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // records are sorted by path
+    public String path(int record) {
+        return new String(pathBytes(record), StandardCharsets.UTF_8);
+    }
+
+    public long hash(int record) {
+        return records.getLong((long) record * BinaryManifestWriter.RECORD_SIZE);
+    }
+
+    // the hash of the last line written for the path, empty if there is none
+    public OptionalLong hashOf(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count;
+        while (low < high) { // first record with a greater path
+            int mid = (low + high) >>> 1;
+            if (Arrays.compareUnsigned(pathBytes(mid), key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low > 0 && Arrays.equals(pathBytes(low - 1), key) ? OptionalLong.of(hash(low - 1)) : OptionalLong.empty();
+    }
+
+    // in path order
+    public List<String> pathsWithHash(long hash) {
+        int low = 0;
+        int high = count;
+        while (low < high) { // first index entry with a hash not less
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(hash(indexed(mid)), hash) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        List<String> paths = new ArrayList<>();
+        for (int i = low; i < count && hash(indexed(i)) == hash; i++) {
+            paths.add(path(indexed(i)));
+        }
+        return paths;
+    }
+
+    private int indexed(int i) {
+        return hashIndex.getInt(i * 4L);
+    }
+
+    private byte[] pathBytes(int record) {
+        long at = (long) record * BinaryManifestWriter.RECORD_SIZE;
+        byte[] bytes = new byte[records.getInt(at + 16)];
+        strings.get(records.getLong(at + 8), bytes);
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) {
+        if (args == null || args.length != 3 || args[0] == null || args[1] == null || args[2] == null) {
+            System.out.println(USAGE);
+            return;
+        }
+        try (MappedManifest manifest = open(Paths.get(args[0]))) {
+            int digits = HashAlgorithm.forName(manifest.algorithm()).bits() / 4;
+            if ("path".equals(args[1])) {
+                OptionalLong hash = manifest.hashOf(args[2]);
+                System.out.println(hash.isPresent() ? hex(hash.getAsLong(), digits) : "No such path");
+            } else if ("hash".equals(args[1])) {
+                manifest.pathsWithHash(Long.parseUnsignedLong(args[2], 16)).forEach(System.out::println);
+            } else {
+                System.out.println(USAGE);
+            }
+        } catch (InvalidPathException e) {
+            error(e, "Invalid manifest file '" + args[0] + "'");
+        } catch (NumberFormatException e) {
+            error(e, "Invalid hash '" + args[2] + "'");
+        } catch (IllegalArgumentException e) {
+            error(e, e.getMessage());
+        } catch (IOException e) {
+            error(e, "Error when reading manifest '" + args[0] + "': " + e.getMessage());
+        }
+    }
+
+    private static String hex(long hash, int digits) {
+        return String.format("%0" + digits + "x", hash);
+    }
+
+    // a section of the file mapped window by window, a window holds whole units so no unit is split
+    private static class Region {
+
+        private static final long MAX_WINDOW = Integer.MAX_VALUE;
+
+        private final ByteBuffer[] windows;
+        private final long window;
+
+        private Region(FileChannel channel, long offset, long length, int unit) throws IOException {
+            window = MAX_WINDOW / unit * unit;
+            windows = new ByteBuffer[(int) ((length + window - 1) / window)];
+            for (int i = 0; i < windows.length; i++) {
+                long from = i * window;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + from, Math.min(window, length - from));
+            }
+        }
+
+        private long getLong(long position) {
+            return windows[(int) (position / window)].getLong((int) (position % window));
+        }
+
+        private int getInt(long position) {
+            return windows[(int) (position / window)].getInt((int) (position % window));
+        }
+
+        // strings are one byte units and may cross windows
+        private void get(long position, byte[] bytes) {
+            for (int done = 0; done < bytes.length; ) {
+                long at = position + done;
+                ByteBuffer buffer = windows[(int) (at / window)].duplicate();
+                buffer.position((int) (at % window));
+                int length = Math.min(bytes.length - done, buffer.remaining());
+                buffer.get(bytes, done, length);
+                done += length;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static ru.ifmo.rain.moshnikov.walk.Logger.error;
+
+// Compares two manifests written with --merkle and prints "+ path" for added, "- path" for removed and
+// "* path" for changed entries in path order. Both are sorted by path on disk (see ManifestSort), where
+// a directory line comes right before everything below it, and merged in one pass: a directory whose hash
+// is the same in both is skipped without comparing its content, a whole added or removed directory
+// is reported as one line.
+public class MerkleCompare {
+
+    private static final long MEMORY = ManifestDiff.DEFAULT_MEMORY_MIB << 20;
+
+    public static void main(String[] args) {
+        if (args == null || args.length != 2 || args[0] == null || args[1] == null) {
+            System.out.println("Usage: MerkleCompare <old manifest> <new manifest>");
+            return;
+        }
+        try {
+            compare(Paths.get(args[0]), Paths.get(args[1]), System.out);
+        } catch (InvalidPathException e) {
+            error(e, "Invalid manifest file '" + e.getInput() + "'");
+        } catch (IOException e) {
+            error(e, "Error when reading manifest: " + e.getMessage());
+        }
+    }
+
+    static void compare(Path before, Path after, PrintStream out) throws IOException {
+        Path runs = ManifestSort.defaultDirectory(before);
+        Path oldSorted = ManifestSort.sort(before, MEMORY, runs);
+        try {
+            Path newSorted = ManifestSort.sort(after, MEMORY, runs);
+            try (BufferedReader oldIn = Files.newBufferedReader(oldSorted, StandardCharsets.UTF_8);
+                 BufferedReader newIn = Files.newBufferedReader(newSorted, StandardCharsets.UTF_8)) {
+                merge(new ManifestDiff.Cursor(oldIn), new ManifestDiff.Cursor(newIn), out);
+            } finally {
+                Files.deleteIfExists(newSorted);
+            }
+        } finally {
+            Files.deleteIfExists(oldSorted);
+        }
+    }
+
+    private static void merge(ManifestDiff.Cursor old, ManifestDiff.Cursor now, PrintStream out) throws IOException {
+        String a = old.next();
+        String b = now.next();
+        while (a != null || b != null) {
+            int c = a == null ? 1 : b == null ? -1 : ManifestSort.compare(a, b);
+            if (c < 0) {
+                out.println("- " + path(a));
+                a = skipBelow(a, old);
+            } else if (c > 0) {
+                out.println("+ " + path(b));
+                b = skipBelow(b, now);
+            } else if (hash(a).equals(hash(b))) { // same subtree
+                a = skipBelow(a, old);
+                b = skipBelow(b, now);
+            } else {
+                // equal paths are both files or both directories, a changed directory is looked into
+                if (!DirectoryHash.isDirectoryLine(path(a))) {
+                    out.println("* " + path(a));
+                }
+                a = old.next();
+                b = now.next();
+            }
+        }
+    }
+
+    // the line after the entry's subtree, the next line for a file
+    private static String skipBelow(String line, ManifestDiff.Cursor lines) throws IOException {
+        String dir = path(line);
+        String next = lines.next();
+        if (DirectoryHash.isDirectoryLine(dir)) {
+            while (next != null && next.startsWith(dir, next.indexOf(' ') + 1)) {
+                next = lines.next();
+            }
+        }
+        return next;
+    }
+
+    private static String hash(String line) {
+        return line.substring(0, line.indexOf(' '));
+    }
+
+    private static String path(String line) {
+        return line.substring(line.indexOf(' ') + 1);
+    }
+
+}
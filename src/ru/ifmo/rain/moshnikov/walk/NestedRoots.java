@@ -0,0 +1,95 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Roots of one run by absolute normalized path, built before anything is walked. A directory is "shared"
+// when its subtree would be walked more than once: it is listed twice, or it is a root lying inside
+// another root. Walks do not follow links, so a root only lies inside another when no symbolic link is on
+// the way down from it, the outer root included: a linked outer root is not walked into at all.
+class NestedRoots {
+
+    static final NestedRoots NONE = new NestedRoots(Map.of());
+
+    private final Map<Path, Integer> counts;
+    private final Set<Path> insideOther = new HashSet<>();
+    private final Set<Path> shared = new HashSet<>();
+
+    private NestedRoots(Map<Path, Integer> counts) {
+        this.counts = counts;
+        for (Path root : counts.keySet()) {
+            if (walkedFromOther(root)) {
+                insideOther.add(root);
+            }
+        }
+        for (Path root : counts.keySet()) {
+            if (counts.get(root) > 1 || insideOther.contains(root)) {
+                shared.add(root);
+            }
+        }
+    }
+
+    // looked up on disk once per root, before the walk
+    private boolean walkedFromOther(Path root) {
+        for (Path parent = root.getParent(); parent != null; parent = parent.getParent()) {
+            try {
+                if (Files.isSymbolicLink(parent)) {
+                    return false;
+                }
+            } catch (SecurityException e) {
+                return false;
+            }
+            if (counts.containsKey(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static NestedRoots of(List<String> roots) {
+        Map<Path, Integer> counts = new HashMap<>();
+        for (String root : roots) {
+            try {
+                counts.merge(absolute(Paths.get(root)), 1, Integer::sum);
+            } catch (InvalidPathException ignored) { // reported when the root is walked
+            }
+        }
+        return new NestedRoots(counts);
+    }
+
+    static Path absolute(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    // false lets walkers skip the per-directory checks
+    boolean anyShared() {
+        return !shared.isEmpty();
+    }
+
+    boolean isShared(Path absolute) {
+        return shared.contains(absolute);
+    }
+
+    // this root is reached by the walk of some other root
+    boolean isInsideOther(Path absolute) {
+        return insideOther.contains(absolute);
+    }
+
+    // the path lies in a shared subtree, so the walk may reach it more than once
+    boolean isUnderShared(Path absolute) {
+        for (Path parent = absolute; parent != null; parent = parent.getParent()) {
+            if (shared.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
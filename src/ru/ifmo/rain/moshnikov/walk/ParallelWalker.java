@@ -0,0 +1,283 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import static ru.ifmo.rain.moshnikov.walk.Logger.error;
+
+// Walks every root as a tree of fork-join tasks: a directory task forks one task per entry
+// and keeps them in DirectoryStream order, so flattening the tree gives exactly the lines
+// Files.walkFileTree would have written. A shared subtree (see NestedRoots) is walked by whichever task
+// reaches it first, the others wait for that task and write its lines under their own path.
+// The entries of an archive (see Archives) are one more tree of tasks below the archive's leaf.
+class ParallelWalker implements Walker {
+
+    // roots that may be walked ahead of the one being written, per thread
+    private static final int PENDING_PER_THREAD = 4;
+
+    private final ManifestOutput out;
+    private final FileHashProvider hashes;
+    private final NestedRoots nested;
+    private final boolean merkle;
+    private final boolean archives;
+    private final WalkStats stats;
+    private final Map<Path, PathTask> subtrees = new ConcurrentHashMap<>();
+    private final ForkJoinPool pool;
+    private final int maxPending;
+    private final Deque<RootTask> pending = new ArrayDeque<>();
+
+    ParallelWalker(ManifestOutput out, int threads, FileHashProvider hashes, NestedRoots nested, boolean merkle,
+                   boolean archives, WalkStats stats) {
+        this.out = out;
+        this.hashes = hashes;
+        this.nested = nested;
+        this.merkle = merkle;
+        this.archives = archives;
+        this.stats = stats;
+        this.pool = newPool(threads);
+        stats.queue(() -> pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount());
+        this.maxPending = threads * PENDING_PER_THREAD;
+    }
+
+    // a worker waiting for a limited store (see StoreScheduler) is replaced by a spare thread that goes on
+    // walking, at most threads of them: beyond that waiting workers just block
+    static ForkJoinPool newPool(int threads) {
+        return new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, false,
+                threads, 2 * threads, 1, pool -> true, 60, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void walk(String root) throws IOException {
+        RootTask task = new RootTask(root);
+        pool.execute(task);
+        pending.add(task);
+        while (pending.size() > maxPending) {
+            writeNext();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        RootTask task = pending.remove();
+        task.join();
+        if (task.node != null) {
+            write(task.node, null, null);
+        } else if (task.invalid) {
+            out.write(hashes.marker(null), 0, task.root);
+        }
+    }
+
+    // paths below from are written below to instead, when the lines come from another task's subtree
+    private void write(PathTask node, Path from, Path to) throws IOException {
+        if (node.skipped) {
+            return;
+        }
+        if (node.source != null) {
+            write(node.source, node.source.path, target(node.path, from, to));
+        } else if (node.children == null) {
+            String name = target(node.path, from, to).toString();
+            out.write(node.marker, node.hash, name);
+            if (node.entries != null) {
+                writeEntries(node.entries, name);
+            }
+        } else {
+            for (PathTask child : node.children) {
+                write(child, from, to);
+            }
+            if (node.listingFailed) {
+                out.write(node.marker, 0, target(node.path, from, to).toString());
+            } else if (merkle) {
+                out.write(node.hash, DirectoryHash.line(target(node.path, from, to)));
+            }
+        }
+    }
+
+    private void writeEntries(PathTask node, String archive) throws IOException {
+        if (node.skipped) {
+            return;
+        }
+        if (node.children == null) {
+            out.write(node.marker, node.hash, Archives.entryName(archive, node.path));
+        } else {
+            for (PathTask child : node.children) {
+                writeEntries(child, archive);
+            }
+            if (node.listingFailed) {
+                out.write(node.marker, 0, Archives.entryName(archive, node.path));
+            }
+        }
+    }
+
+    private static Path target(Path path, Path from, Path to) {
+        return from == null ? path : to.resolve(from.relativize(path));
+    }
+
+    @SuppressWarnings("serial") // tasks are never serialized
+    private class RootTask extends RecursiveAction {
+
+        private final String root;
+        private PathTask node;
+        private boolean invalid;
+
+        private RootTask(String root) {
+            this.root = root;
+        }
+
+        @Override
+        protected void compute() {
+            long start = stats.rootStarted(root);
+            try { // path
+                PathTask task = new PathTask(Paths.get(root), true);
+                try {
+                    task.invoke();
+                    node = task;
+                } catch (SecurityException e) {
+                    error(e, "Unable to access file/directory '" + root + "'");
+                }
+            } catch (InvalidPathException e) { // path
+                error(e, "Invalid input path '" + root + "'");
+                invalid = true;
+            } finally {
+                stats.rootFinished(root, start);
+            }
+        }
+
+    }
+
+    // a leaf (children == null) is one output line, a directory is the concatenation of its children
+    // followed by its own line in Merkle mode, or by an error line if its listing broke off.
+    // Failures match Files.walkFileTree: a SecurityException only fails a root, any other entry is left out.
+    @SuppressWarnings("serial")
+    private class PathTask extends RecursiveAction {
+
+        private final Path path;
+        private final boolean root;
+        private boolean skipped;
+        private boolean listingFailed;
+        private char marker = ManifestWriter.NO_MARKER;
+        private long hash;
+        private List<PathTask> children;
+        private PathTask source;
+        // the root of the entries when this leaf is an archive
+        private PathTask entries;
+
+        private PathTask(Path path, boolean root) {
+            this.path = path;
+            this.root = root;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                walk();
+            } catch (SecurityException e) {
+                if (root) {
+                    throw e;
+                }
+                skipped = true;
+            }
+        }
+
+        private void walk() {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                visitFileFailed(e);
+                return;
+            }
+            if (!attrs.isDirectory()) {
+                try {
+                    hash = hashes.read(path, attrs);
+                    marker = hashes.marker(attrs);
+                } catch (IOException | SecurityException e) {
+                    hash = FnvFileHasher.failed(path, e);
+                    marker = hashes.marker(null);
+                }
+                if (archives && Archives.isArchive(path, attrs)) {
+                    walkArchive();
+                }
+                return;
+            }
+            if (nested.anyShared()) {
+                Path absolute = NestedRoots.absolute(path);
+                if (nested.isShared(absolute)) {
+                    PathTask claimed = subtrees.putIfAbsent(absolute, this);
+                    if (claimed != null) {
+                        claimed.join();
+                        source = claimed;
+                        hash = claimed.hash;
+                        return;
+                    }
+                }
+            }
+
+            List<PathTask> tasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path entry : stream) {
+                    tasks.add(new PathTask(entry, false));
+                }
+            } catch (IOException e) {
+                visitFileFailed(e);
+                return;
+            } catch (DirectoryIteratorException e) { // the entries read so far are still walked
+                error(e.getCause(), "Failed to access file/directory '" + path + "'");
+                listingFailed = true;
+            }
+            ForkJoinTask.invokeAll(tasks);
+            children = tasks;
+            if (listingFailed) {
+                hash = 0;
+                marker = hashes.marker(null);
+            } else if (merkle) {
+                List<DirectoryHash.Entry> entries = new ArrayList<>();
+                for (PathTask task : tasks) {
+                    if (!task.skipped) {
+                        entries.add(new DirectoryHash.Entry(task.path, task.hash));
+                    }
+                }
+                hash = DirectoryHash.hash(hashes.algorithm(), entries);
+            }
+        }
+
+        // a zip file system has a single root
+        private void walkArchive() {
+            FileSystem fs = Archives.open(path);
+            if (fs == null) {
+                return;
+            }
+            try {
+                PathTask root = new PathTask(fs.getRootDirectories().iterator().next(), false);
+                root.invoke();
+                entries = root;
+            } finally {
+                Archives.close(fs, path);
+            }
+        }
+
+        private void visitFileFailed(IOException e) {
+            error(e, "Failed to access file/directory '" + path + "'");
+            hash = 0;
+            marker = hashes.marker(null);
+        }
+
+    }
+
+}
@@ -1,70 +1,125 @@
 package ru.ifmo.rain.moshnikov.walk;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 import static ru.ifmo.rain.moshnikov.walk.Logger.error;
 
 public class RecursiveWalk {
 
     public static void main(String[] args) {
-        if (args == null || args.length != 2 || args[0] == null || args[1] == null) {
-            System.out.println("Usage: RecursiveWalk <input file> <output file>");
+        if (args == null) {
+            System.out.println(WalkOptions.USAGE);
+            return;
+        }
+        WalkOptions options;
+        try {
+            options = WalkOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(WalkOptions.USAGE);
             return;
         }
 
         try {
-            Path inputFile = Paths.get(args[0]);
+            Path inputFile = Paths.get(options.input);
             try {
-                Path outputFile = Paths.get(args[1]);
+                Path outputFile = Paths.get(options.output);
                 Path parent = outputFile.getParent();
                 if (parent != null) {
                     Files.createDirectories(parent);
                 }
-                run(inputFile, outputFile);
+                FileHashProvider hashes = FileHashProvider.direct(options.algorithm);
+                WalkStats stats = new WalkStats();
+                if (options.stats) {
+                    hashes = stats.reading(hashes);
+                }
+                // only real reads wait for their store, not files the index already knows
+                StoreScheduler stores = options.stores.isEmpty() ? null : new StoreScheduler(hashes, options.stores);
+                if (stores != null) {
+                    hashes = stores;
+                }
+                HashIndex index = options.index == null ? null : HashIndex.load(Paths.get(options.index), hashes);
+                if (index != null) {
+                    hashes = index;
+                }
+                Fingerprinter fingerprinter = options.fingerprint
+                        ? new Fingerprinter(hashes, stores, stats, options.escalate)
+                        : null;
+                if (fingerprinter != null) {
+                    hashes = fingerprinter;
+                }
+                if (options.stats) { // below the FileKeyCache added by createWalker, so physical files are counted
+                    hashes = stats.counting(hashes);
+                    stats.start();
+                }
+                try {
+                    run(inputFile, outputFile, options, hashes, fingerprinter, stats);
+                } finally {
+                    stats.stop();
+                    if (stores != null) {
+                        stores.close();
+                    }
+                }
+                if (index != null) {
+                    saveIndex(index, options.index);
+                }
             } catch (InvalidPathException e) {
-                error(e, "Invalid output file '" + args[1] + "'");
+                error(e, "Invalid output or index file '" + e.getInput() + "'");
             } catch (WalkException e) {
                 error(e, e.getMessage());
             } catch (IOException e) {
-                error(e, "Error when creating output file '" + args[1] + "'");
+                error(e, "Error when creating output file '" + options.output + "'");
             }
         } catch (InvalidPathException e) {
-            error(e, "Invalid input file '" + args[0] + "'");
+            error(e, "Invalid input file '" + options.input + "'");
+        }
+    }
+
+    private static void saveIndex(HashIndex index, String file) {
+        try {
+            index.save();
+        } catch (SecurityException e) {
+            error(e, "Unable to access hash index '" + file + "'");
+        } catch (IOException e) {
+            error(e, "Error when writing hash index '" + file + "'");
         }
     }
 
-    private static void run(Path inputFile, Path outputFile) throws WalkException {
+    private static void run(Path inputFile, Path outputFile, WalkOptions options, FileHashProvider hashes,
+                            Fingerprinter fingerprinter, WalkStats stats) throws WalkException {
         try (BufferedReader in = Files.newBufferedReader(inputFile)) {
-            try (BufferedWriter out = Files.newBufferedWriter(outputFile)) {
+            try (ManifestOutput out = options.binary
+                    ? new BinaryManifestWriter(Files.newOutputStream(outputFile), hashes.algorithm())
+                    : new ManifestWriter(Files.newOutputStream(outputFile), hashes.algorithm())) {
+                // all roots are read first, so roots nested in other roots are known before walking
+                List<String> roots = new ArrayList<>();
                 try { // readline
-                    HashingFileVisitor fileVisitor = new HashingFileVisitor(out);
                     String pathStr;
                     while ((pathStr = in.readLine()) != null) {
-                        try { // out.write
-                            try { // path
-                                Path rootPath = Paths.get(pathStr);
-                                try {
-                                    Files.walkFileTree(rootPath, fileVisitor);
-                                } catch (SecurityException e) {
-                                    error(e, "Unable to access file/directory '" + pathStr + "'");
-                                }
-                            } catch (InvalidPathException e) { // path
-                                error(e, "Invalid input path '" + pathStr + "'");
-                                FnvFileHasher.writeHash(out, 0, pathStr);
-                            }
-                        } catch (IOException e) { // writeHash from walkFileTree and from InvalidPath
-                            throw rwe("Error when writing output to file '" + outputFile + "'", e);
-                        }
+                        roots.add(pathStr);
                     }
                 } catch (IOException e) { // readline
                     throw rwe("Error when reading input from file '" + inputFile + "'", e);
                 }
+                Walker walker = createWalker(options, out, hashes, NestedRoots.of(roots), stats);
+                try { // out.write
+                    for (String root : roots) {
+                        walker.walk(root);
+                    }
+                    walker.close();
+                    if (fingerprinter != null) {
+                        fingerprinter.writeEscalations(out);
+                    }
+                } catch (IOException e) { // writeHash from walkFileTree and from InvalidPath
+                    throw rwe("Error when writing output to file '" + outputFile + "'", e);
+                }
             } catch (SecurityException e) { // out
                 throw rwe("Unable to access output file '" + outputFile.toString() + "'", e);
             } catch (IOException e) {
@@ -77,6 +132,25 @@ public class RecursiveWalk {
         }
     }
 
+    // threads == 0 keeps the original single-threaded Files.walkFileTree traversal
+    // watch mode has to see new content under an old file key, all other walks read each physical file once
+    private static Walker createWalker(WalkOptions options, ManifestOutput out, FileHashProvider hashes,
+                                       NestedRoots nested, WalkStats stats) throws IOException {
+        if (options.watch) {
+            return new WatchWalker(out, hashes);
+        }
+        if (options.async > 0) {
+            return new AsyncWalker(out, hashes.algorithm(), options.async, options.threads);
+        }
+        FileHashProvider cached = new FileKeyCache(hashes, nested);
+        if (options.duplicates) {
+            return new DuplicateWalker(out, cached, options.threads, nested, stats);
+        }
+        return options.threads == 0
+                ? new SequentialWalker(out, cached, nested, options.merkle, options.archives, stats)
+                : new ParallelWalker(out, options.threads, cached, nested, options.merkle, options.archives, stats);
+    }
+
     private static WalkException rwe(String message, Throwable e) {
         return new WalkException(message, e);
     }
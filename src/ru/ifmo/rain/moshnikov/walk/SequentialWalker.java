@@ -0,0 +1,49 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static ru.ifmo.rain.moshnikov.walk.Logger.error;
+
+class SequentialWalker implements Walker {
+
+    private final ManifestOutput out;
+    private final FileHashProvider hashes;
+    private final HashingFileVisitor fileVisitor;
+    private final WalkStats stats;
+
+    SequentialWalker(ManifestOutput out, FileHashProvider hashes, NestedRoots nested, boolean merkle,
+                     boolean archives, WalkStats stats) {
+        this.out = out;
+        this.hashes = hashes;
+        this.fileVisitor = new HashingFileVisitor(out, hashes, nested, merkle, archives);
+        this.stats = stats;
+    }
+
+    @Override
+    public void walk(String root) throws IOException {
+        try { // path
+            Path rootPath = Paths.get(root);
+            long start = stats.rootStarted(root);
+            try {
+                fileVisitor.startRoot();
+                Files.walkFileTree(rootPath, fileVisitor);
+            } catch (SecurityException e) {
+                error(e, "Unable to access file/directory '" + root + "'");
+            } finally {
+                stats.rootFinished(root, start);
+            }
+        } catch (InvalidPathException e) { // path
+            error(e, "Invalid input path '" + root + "'");
+            out.write(hashes.marker(null), 0, root);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
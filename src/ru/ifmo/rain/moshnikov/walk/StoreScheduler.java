@@ -0,0 +1,173 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Limits how many files are read at once on each file store (--store), so one run can keep a fast device busy
+// without making a rotational disk seek between many concurrent reads. Stores are told apart by FileStore.name(),
+// stores that are not configured and other file systems than the default one, such as archives, are not limited.
+// Files.getFileStore is expensive, so each thread looks it up again only when it moves on to another directory.
+// Each limited store has a queue of reads and limit reader threads taking them, a sequential store has one reader
+// that takes the waiting reads in path order instead of arrival order. The thread asking for a hash waits for its
+// read through ForkJoinPool.managedBlock, so a walking pool may replace it (see ParallelWalker.newPool).
+// Sits below the hash index, so files the index already knows are not queued at all.
+class StoreScheduler implements FileHashProvider {
+
+    // the limit of a sequential store
+    static final int SEQUENTIAL = 0;
+
+    private final FileHashProvider hasher;
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private final Map<FileStore, Optional<Lane>> byStore = new ConcurrentHashMap<>();
+    private final ThreadLocal<Directory> lastDirectory = new ThreadLocal<>();
+
+    StoreScheduler(FileHashProvider hasher, Map<String, Integer> limits) {
+        this.hasher = hasher;
+        limits.forEach((store, limit) -> lanes.put(store, new Lane(store, limit)));
+    }
+
+    @Override
+    public HashAlgorithm algorithm() {
+        return hasher.algorithm();
+    }
+
+    @Override
+    public char marker(BasicFileAttributes attrs) {
+        return hasher.marker(attrs);
+    }
+
+    @Override
+    public long read(Path file, BasicFileAttributes attrs) throws IOException {
+        return read(file, () -> hasher.read(file, attrs));
+    }
+
+    // runs a read of file on the readers of its store, in the calling thread if the store is not limited
+    long read(Path file, Read read) throws IOException {
+        Optional<Lane> lane = lane(file);
+        if (lane.isEmpty()) {
+            return read.read();
+        }
+        Job job = new Job(file, read);
+        lane.get().readers.execute(job);
+        try {
+            ForkJoinPool.managedBlock(job);
+            return job.get();
+        } catch (InterruptedException e) {
+            job.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to read '" + file + "'");
+        } catch (ExecutionException e) { // thrown on as if the read had run in this thread
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    void close() {
+        for (Lane lane : lanes.values()) {
+            lane.readers.shutdownNow();
+        }
+    }
+
+    // a mount point is a directory, so all files of a directory are on the same store
+    private Optional<Lane> lane(Path file) {
+        if (file.getFileSystem() != FileSystems.getDefault()) {
+            return Optional.empty();
+        }
+        Path parent = file.getParent();
+        Path dir = parent == null ? NestedRoots.absolute(file).getParent() : parent;
+        Directory last = lastDirectory.get();
+        if (last != null && last.dir.equals(dir)) {
+            return last.lane;
+        }
+        Optional<Lane> lane;
+        try {
+            lane = byStore.computeIfAbsent(Files.getFileStore(file), store -> Optional.ofNullable(lanes.get(store.name())));
+        } catch (IOException | SecurityException e) { // the read itself will report it
+            return Optional.empty();
+        }
+        lastDirectory.set(new Directory(dir, lane));
+        return lane;
+    }
+
+    private static class Directory {
+
+        private final Path dir;
+        private final Optional<Lane> lane;
+
+        private Directory(Path dir, Optional<Lane> lane) {
+            this.dir = dir;
+            this.lane = lane;
+        }
+
+    }
+
+    interface Read {
+
+        long read() throws IOException;
+
+    }
+
+    private static class Lane {
+
+        private final ThreadPoolExecutor readers;
+
+        private Lane(String store, int limit) {
+            int threads = limit == SEQUENTIAL ? 1 : limit;
+            BlockingQueue<Runnable> waiting = limit == SEQUENTIAL
+                    ? new PriorityBlockingQueue<>()
+                    : new LinkedBlockingQueue<>();
+            this.readers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, waiting, task -> {
+                Thread thread = new Thread(task, "walk-store-" + store);
+                thread.setDaemon(true);
+                return thread;
+            });
+            // every read goes through the queue, so the first ones are ordered too
+            readers.prestartAllCoreThreads();
+        }
+
+    }
+
+    // only queued in a PriorityBlockingQueue by sequential stores, which order reads by path
+    private static class Job extends FutureTask<Long> implements Comparable<Job>, ForkJoinPool.ManagedBlocker {
+
+        private final Path file;
+
+        private Job(Path file, Read read) {
+            super(read::read);
+            this.file = file;
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            return file.compareTo(other.file);
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            try {
+                get();
+            } catch (ExecutionException | CancellationException ignored) { // seen by the caller's get
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return isDone();
+        }
+
+    }
+
+}
@@ -2,6 +2,8 @@ package ru.ifmo.rain.moshnikov.walk;
 
 class WalkException extends Exception {
 
+    private static final long serialVersionUID = 1L;
+
     WalkException(String message, Throwable cause) {
         super(message, cause);
     }
@@ -0,0 +1,182 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class WalkOptions {
+
+    static final String USAGE = "Usage: RecursiveWalk <input file> <output file> [threads] [--index <index file>]"
+            + " [--algorithm fnv1-32|fnv1a-64|xxh64] [--duplicates] [--watch] [--merkle]"
+            + " [--fingerprint [--escalate]] [--store <store name>=<limit>|sequential]... [--archives] [--binary] [--stats]"
+            + " [--async <reads>]";
+
+    final String input;
+    final String output;
+    final int threads;
+    final String index;
+    final HashAlgorithm algorithm;
+    final boolean duplicates;
+    final boolean watch;
+    final boolean merkle;
+    final boolean fingerprint;
+    final boolean escalate;
+    // read limits by FileStore name, StoreScheduler.SEQUENTIAL for sequential stores
+    final Map<String, Integer> stores;
+    final boolean archives;
+    final boolean binary;
+    final boolean stats;
+    // reads in flight for AsyncWalker, 0 without --async
+    final int async;
+
+    private WalkOptions(String input, String output, int threads, String index, HashAlgorithm algorithm,
+                        boolean duplicates, boolean watch, boolean merkle, boolean fingerprint, boolean escalate,
+                        Map<String, Integer> stores, boolean archives, boolean binary,
+                        boolean stats, int async) {
+        this.input = input;
+        this.output = output;
+        this.threads = threads;
+        this.index = index;
+        this.algorithm = algorithm;
+        this.duplicates = duplicates;
+        this.watch = watch;
+        this.merkle = merkle;
+        this.fingerprint = fingerprint;
+        this.escalate = escalate;
+        this.stores = stores;
+        this.archives = archives;
+        this.binary = binary;
+        this.stats = stats;
+        this.async = async;
+    }
+
+    static WalkOptions parse(String[] args) {
+        List<String> positional = new ArrayList<>();
+        String index = null;
+        HashAlgorithm algorithm = HashAlgorithm.DEFAULT;
+        boolean duplicates = false;
+        boolean watch = false;
+        boolean merkle = false;
+        boolean fingerprint = false;
+        boolean escalate = false;
+        Map<String, Integer> stores = new HashMap<>();
+        boolean archives = false;
+        boolean binary = false;
+        boolean stats = false;
+        int async = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] == null) {
+                throw new IllegalArgumentException("Non-null arguments expected");
+            }
+            switch (args[i]) {
+                case "--index":
+                    index = value(args, ++i);
+                    break;
+                case "--algorithm":
+                    algorithm = HashAlgorithm.forName(value(args, ++i));
+                    break;
+                case "--duplicates":
+                    duplicates = true;
+                    break;
+                case "--watch":
+                    watch = true;
+                    break;
+                case "--merkle":
+                    merkle = true;
+                    break;
+                case "--fingerprint":
+                    fingerprint = true;
+                    break;
+                case "--escalate":
+                    escalate = true;
+                    break;
+                case "--store":
+                    store(value(args, ++i), stores);
+                    break;
+                case "--archives":
+                    archives = true;
+                    break;
+                case "--binary":
+                    binary = true;
+                    break;
+                case "--stats":
+                    stats = true;
+                    break;
+                case "--async":
+                    async = positive(value(args, ++i), "async reads");
+                    break;
+                default:
+                    positional.add(args[i]);
+            }
+        }
+        if (positional.size() < 2 || positional.size() > 3) {
+            throw new IllegalArgumentException("Input and output files expected");
+        }
+        int threads = positional.size() > 2 ? nonNegative(positional.get(2), "threads") : 0;
+        if (watch && (threads > 0 || duplicates || merkle)) {
+            throw new IllegalArgumentException("'--watch' cannot be combined with a thread count, '--duplicates' or '--merkle'");
+        }
+        if (duplicates && merkle) {
+            throw new IllegalArgumentException("'--duplicates' cannot be combined with '--merkle'");
+        }
+        if (escalate && !fingerprint) {
+            throw new IllegalArgumentException("'--escalate' only applies to '--fingerprint'");
+        }
+        if (fingerprint && (duplicates || watch || merkle)) {
+            throw new IllegalArgumentException("'--fingerprint' cannot be combined with '--duplicates', '--watch' or '--merkle'");
+        }
+        if (archives && (duplicates || watch || merkle || fingerprint)) {
+            throw new IllegalArgumentException("'--archives' cannot be combined with '--duplicates', '--watch', '--merkle'"
+                    + " or '--fingerprint'");
+        }
+        if (binary && (duplicates || watch || fingerprint)) {
+            throw new IllegalArgumentException("'--binary' cannot be combined with '--duplicates', '--watch' or '--fingerprint'");
+        }
+        if (async > 0 && (index != null || duplicates || watch || merkle || fingerprint || archives || !stores.isEmpty()
+                || stats)) {
+            throw new IllegalArgumentException("'--async' cannot be combined with '--index', '--duplicates', '--watch',"
+                    + " '--merkle', '--fingerprint', '--archives', '--store' or '--stats'");
+        }
+        return new WalkOptions(positional.get(0), positional.get(1), threads, index, algorithm,
+                duplicates, watch, merkle, fingerprint, escalate, stores, archives, binary, stats, async);
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length || args[i] == null) {
+            throw new IllegalArgumentException("Value expected after '" + args[i - 1] + "'");
+        }
+        return args[i];
+    }
+
+    private static void store(String value, Map<String, Integer> stores) {
+        int split = value.lastIndexOf('=');
+        if (split <= 0) {
+            throw new IllegalArgumentException("'--store' expects <store name>=<limit>|sequential: " + value);
+        }
+        String limit = value.substring(split + 1);
+        stores.put(value.substring(0, split), "sequential".equals(limit)
+                ? StoreScheduler.SEQUENTIAL
+                : positive(limit, "store limit"));
+    }
+
+    private static int positive(String value, String name) {
+        int result = nonNegative(value, name);
+        if (result == 0) {
+            throw new IllegalArgumentException("Argument '" + name + "' is expected to be a positive integer: " + value);
+        }
+        return result;
+    }
+
+    private static int nonNegative(String value, String name) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("Argument '" + name + "' is expected to be a non-negative integer: " + value);
+    }
+
+}
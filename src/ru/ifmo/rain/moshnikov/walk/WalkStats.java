@@ -0,0 +1,273 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static ru.ifmo.rain.moshnikov.walk.Logger.error;
+
+// Progress of a walk (--stats): registered as an MXBean and printed to stderr every REPORT_SECONDS with the rates
+// of the last interval, so a long run shows whether it is reading, waiting or stuck on one root.
+// Files are counted below FileKeyCache as physical files: hard links, files met again through overlapping roots and
+// replayed shared subtrees are written as lines without being counted again, so the count can be lower than the
+// manifest's. Bytes are counted only as they are really read, so files the index already knew do not inflate
+// the read rate.
+// The per-file cost is two nanoTime calls and two LongAdder increments, the slowest files are only locked
+// for once a file beats the current tenth slowest.
+class WalkStats implements WalkStatsMXBean {
+
+    private static final String NAME = "ru.ifmo.rain.moshnikov.walk:type=WalkStats";
+    private static final long REPORT_SECONDS = 5;
+    private static final int SLOWEST = 10;
+
+    private final long started = System.nanoTime();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final Map<String, Long> running = new ConcurrentHashMap<>();
+    private final Slowest slowestRoots = new Slowest();
+    private final Slowest slowestFiles = new Slowest();
+    private volatile LongSupplier queue = () -> 0;
+    private ScheduledExecutorService reporter;
+    private ObjectName name;
+
+    // registers the MXBean and starts the stderr reports
+    void start() {
+        try {
+            name = new ObjectName(NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        } catch (InstanceAlreadyExistsException e) {
+            name = null; // another walk in this JVM already shows its stats
+        } catch (JMException e) {
+            error(e, "Unable to register walk statistics with JMX");
+            name = null;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "walk-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(new Report(System.err), REPORT_SECONDS, REPORT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // prints the totals and the slowest roots and files
+    void stop() {
+        if (reporter == null) {
+            return;
+        }
+        reporter.shutdownNow();
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException ignored) {
+            }
+        }
+        PrintStream err = System.err;
+        err.printf("walk: done, %d physical files, %s in %.1f s, %d errors%n",
+                getPhysicalFiles(), size(getBytes()), seconds(System.nanoTime() - started), getErrors());
+        getSlowestRoots().forEach(root -> err.println("walk: slow root " + root));
+        getSlowestFiles().forEach(file -> err.println("walk: slow file " + file));
+    }
+
+    // counts the bytes of every file read through the returned provider, which has to be the one reading them
+    FileHashProvider reading(FileHashProvider hasher) {
+        return new FileHashProvider() {
+            @Override
+            public HashAlgorithm algorithm() {
+                return hasher.algorithm();
+            }
+
+            @Override
+            public char marker(BasicFileAttributes attrs) {
+                return hasher.marker(attrs);
+            }
+
+            @Override
+            public long read(Path file, BasicFileAttributes attrs) throws IOException {
+                long hash = hasher.read(file, attrs);
+                bytes.add(attrs.size());
+                return hash;
+            }
+        };
+    }
+
+    // bytes read besides whole files, such as samples and prefixes
+    void read(long count) {
+        bytes.add(count);
+    }
+
+    // counts and times every file hashed through the returned provider, which has to be below the FileKeyCache
+    FileHashProvider counting(FileHashProvider hasher) {
+        return new FileHashProvider() {
+            @Override
+            public HashAlgorithm algorithm() {
+                return hasher.algorithm();
+            }
+
+            @Override
+            public char marker(BasicFileAttributes attrs) {
+                return hasher.marker(attrs);
+            }
+
+            @Override
+            public long read(Path file, BasicFileAttributes attrs) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    return hasher.read(file, attrs);
+                } finally { // failed files are counted too
+                    long elapsed = System.nanoTime() - start;
+                    files.increment();
+                    if (elapsed > slowestFiles.threshold) {
+                        slowestFiles.offer(file.toString(), elapsed);
+                    }
+                }
+            }
+        };
+    }
+
+    void queue(LongSupplier depth) {
+        queue = depth;
+    }
+
+    long rootStarted(String root) {
+        long start = System.nanoTime();
+        running.put(root, start);
+        return start;
+    }
+
+    void rootFinished(String root, long start) {
+        running.remove(root, start);
+        long elapsed = System.nanoTime() - start;
+        if (elapsed > slowestRoots.threshold) {
+            slowestRoots.offer(root, elapsed);
+        }
+    }
+
+    @Override
+    public long getPhysicalFiles() {
+        return files.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public double getPhysicalFilesPerSecond() {
+        return getPhysicalFiles() / seconds(System.nanoTime() - started);
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return getBytes() / seconds(System.nanoTime() - started);
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return queue.getAsLong();
+    }
+
+    @Override
+    public long getErrors() {
+        return Logger.errors();
+    }
+
+    @Override
+    public Map<String, Long> getRunningRoots() {
+        long now = System.nanoTime();
+        Map<String, Long> elapsed = new TreeMap<>();
+        running.forEach((root, start) -> elapsed.put(root, TimeUnit.NANOSECONDS.toMillis(now - start)));
+        return elapsed;
+    }
+
+    @Override
+    public List<String> getSlowestRoots() {
+        return slowestRoots.list();
+    }
+
+    @Override
+    public List<String> getSlowestFiles() {
+        return slowestFiles.list();
+    }
+
+    private static double seconds(long nanos) {
+        return Math.max(nanos, 1) / 1e9;
+    }
+
+    private static String size(double bytes) {
+        return bytes < 1 << 20 ? String.format("%.1f KiB", bytes / (1 << 10)) : String.format("%.1f MiB", bytes / (1 << 20));
+    }
+
+    private class Report implements Runnable {
+
+        private final PrintStream err;
+        private long lastTime = started;
+        private long lastFiles;
+        private long lastBytes;
+
+        private Report(PrintStream err) {
+            this.err = err;
+        }
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            long files = getPhysicalFiles();
+            long bytes = getBytes();
+            double interval = seconds(now - lastTime);
+            StringBuilder line = new StringBuilder(String.format("walk: %d physical files (%.0f/s), %s (%s/s), queue %d, errors %d",
+                    files, (files - lastFiles) / interval, size(bytes), size((bytes - lastBytes) / interval),
+                    getQueueDepth(), getErrors()));
+            // the root running longest is where a stuck walk is stuck
+            running.entrySet().stream().min(Map.Entry.comparingByValue()).ifPresent(root -> line.append(
+                    String.format(", root '%s' %.1f s", root.getKey(), seconds(now - root.getValue()))));
+            err.println(line);
+            lastTime = now;
+            lastFiles = files;
+            lastBytes = bytes;
+        }
+
+    }
+
+    // the SLOWEST longest times seen, offer is only worth calling above threshold
+    private static class Slowest {
+
+        private final PriorityQueue<Map.Entry<Long, String>> entries = new PriorityQueue<>(Map.Entry.comparingByKey());
+        private volatile long threshold;
+
+        private synchronized void offer(String name, long nanos) {
+            if (nanos <= threshold) {
+                return;
+            }
+            entries.add(Map.entry(nanos, name));
+            if (entries.size() > SLOWEST) {
+                entries.poll();
+                threshold = entries.peek().getKey();
+            }
+        }
+
+        private synchronized List<String> list() {
+            List<Map.Entry<Long, String>> sorted = new ArrayList<>(entries);
+            sorted.sort(Map.Entry.<Long, String>comparingByKey().reversed());
+            List<String> lines = new ArrayList<>();
+            for (Map.Entry<Long, String> entry : sorted) {
+                lines.add(TimeUnit.NANOSECONDS.toMillis(entry.getKey()) + " ms " + entry.getValue());
+            }
+            return lines;
+        }
+
+    }
+
+}
@@ -0,0 +1,31 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.util.List;
+import java.util.Map;
+
+// what RecursiveWalk --stats exposes as ru.ifmo.rain.moshnikov.walk:type=WalkStats, rates are since the start
+public interface WalkStatsMXBean {
+
+    // each physical file is counted once, not each line naming it, see WalkStats
+    long getPhysicalFiles();
+
+    long getBytes();
+
+    double getPhysicalFilesPerSecond();
+
+    double getBytesPerSecond();
+
+    long getQueueDepth();
+
+    long getErrors();
+
+    // elapsed milliseconds of the roots being walked right now
+    Map<String, Long> getRunningRoots();
+
+    // "<millis> ms <root>", slowest first
+    List<String> getSlowestRoots();
+
+    // "<millis> ms <file>", slowest first
+    List<String> getSlowestFiles();
+
+}
@@ -0,0 +1,15 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+interface Walker extends Closeable {
+
+    // walks one root from the input file, IOException means output failure
+    void walk(String root) throws IOException;
+
+    // writes everything that is still pending
+    @Override
+    void close() throws IOException;
+
+}
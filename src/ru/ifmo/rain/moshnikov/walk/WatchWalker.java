@@ -0,0 +1,222 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import static ru.ifmo.rain.moshnikov.walk.Logger.error;
+
+// Writes the usual manifest for the roots, then keeps every walked directory registered with a WatchService
+// and writes only what changes: "+ <hash> <path>" for added, "* <hash> <path>" for changed and
+// "- <hash> <path>" (the last known hash) for removed files. Events are collected until the tree has been
+// quiet for QUIET_MILLIS, so a burst of writes to one file is hashed once. Runs until no directory
+// is watched any more or the thread is interrupted.
+class WatchWalker implements Walker {
+
+    private static final long QUIET_MILLIS = 200;
+    private static final long MAX_BATCH_MILLIS = 2000;
+
+    private final ManifestOutput out;
+    private final FileHashProvider hashes;
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    // directories whose whole content is tracked, as opposed to parents of file roots
+    private final Set<Path> trees = new HashSet<>();
+    // absolute path of a file root to the path it was given as
+    private final Map<Path, Path> fileRoots = new HashMap<>();
+    // by path string: everything below a directory is the range of keys starting with it and a separator
+    private final NavigableMap<String, Long> known = new TreeMap<>();
+    private boolean initial = true;
+
+    private final SimpleFileVisitor<Path> visitor = new SimpleFileVisitor<>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            register(dir, true);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            update(file, hashes.hash(file, attrs));
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+            error(exc, "Failed to access file/directory '" + file + "'");
+            if (initial) {
+                out.write(0, file.toString());
+            }
+            return FileVisitResult.CONTINUE;
+        }
+    };
+
+    WatchWalker(ManifestOutput out, FileHashProvider hashes) throws IOException {
+        this.out = out;
+        this.hashes = hashes;
+        this.watcher = FileSystems.getDefault().newWatchService();
+    }
+
+    @Override
+    public void walk(String root) throws IOException {
+        try { // path
+            Path rootPath = Paths.get(root);
+            try {
+                if (!Files.isDirectory(rootPath, LinkOption.NOFOLLOW_LINKS)) {
+                    Path absolute = rootPath.toAbsolutePath().normalize();
+                    fileRoots.put(absolute, rootPath);
+                    Path parent = absolute.getParent();
+                    if (parent != null) {
+                        register(parent, false);
+                    }
+                }
+                Files.walkFileTree(rootPath, visitor);
+            } catch (SecurityException e) {
+                error(e, "Unable to access file/directory '" + root + "'");
+            }
+        } catch (InvalidPathException e) { // path
+            error(e, "Invalid input path '" + root + "'");
+            out.write(0, root);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        initial = false;
+        try (watcher) {
+            out.flush();
+            while (!keys.isEmpty()) {
+                for (Path path : nextBatch()) {
+                    refresh(path);
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ignored) {
+        }
+    }
+
+    private void register(Path dir, boolean tree) {
+        try {
+            WatchKey key = dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            if (tree) {
+                keys.put(key, dir);
+                trees.add(dir);
+            } else {
+                keys.putIfAbsent(key, dir);
+            }
+        } catch (IOException | SecurityException e) {
+            error(e, "Unable to watch directory '" + dir + "', its changes will be missed");
+        }
+    }
+
+    // paths touched by one burst of events, sorted so the deltas do not depend on event order
+    private SortedSet<Path> nextBatch() throws InterruptedException {
+        SortedSet<Path> batch = new TreeSet<>();
+        WatchKey key = watcher.take();
+        long deadline = System.currentTimeMillis() + MAX_BATCH_MILLIS;
+        while (key != null) {
+            Path dir = keys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (dir == null) {
+                    continue;
+                }
+                if (event.kind() == OVERFLOW) {
+                    batch.addAll(listKnown(dir));
+                } else {
+                    Path path = dir.resolve((Path) event.context());
+                    if (trees.contains(dir)) {
+                        batch.add(path);
+                    } else if (fileRoots.containsKey(path.toAbsolutePath().normalize())) {
+                        batch.add(fileRoots.get(path.toAbsolutePath().normalize()));
+                    }
+                }
+            }
+            if (!key.reset()) {
+                keys.remove(key);
+                if (trees.remove(dir)) {
+                    batch.add(dir);
+                }
+            }
+            long left = deadline - System.currentTimeMillis();
+            key = left <= 0 ? null : watcher.poll(Math.min(QUIET_MILLIS, left), TimeUnit.MILLISECONDS);
+        }
+        return batch;
+    }
+
+    // after an overflow everything in the directory has to be looked at again
+    private List<Path> listKnown(Path dir) {
+        List<Path> paths = new ArrayList<>();
+        for (String path : below(dir).keySet()) {
+            Path file = Paths.get(path);
+            if (dir.equals(file.getParent())) {
+                paths.add(file);
+            }
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            stream.forEach(paths::add);
+        } catch (IOException | DirectoryIteratorException | SecurityException e) {
+            error(e, "Unable to list directory '" + dir + "'");
+        }
+        return paths;
+    }
+
+    private void refresh(Path path) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException | SecurityException e) {
+            removeUnder(path);
+            return;
+        }
+        if (attrs.isDirectory()) {
+            if (trees.contains(path)) { // already watched, its own events tell what changed inside
+                return;
+            }
+            try {
+                Files.walkFileTree(path, visitor);
+            } catch (SecurityException e) {
+                error(e, "Unable to access file/directory '" + path + "'");
+            }
+        } else {
+            update(path, hashes.hash(path, attrs));
+        }
+    }
+
+    private void update(Path file, long hash) throws IOException {
+        Long previous = known.put(file.toString(), hash);
+        if (initial) {
+            out.write(hash, file.toString());
+        } else if (previous == null) {
+            out.write('+', hash, file.toString());
+        } else if (previous != hash) {
+            out.write('*', hash, file.toString());
+        }
+    }
+
+    // a deleted directory only reports itself, so every file known below it is gone too
+    private void removeUnder(Path path) throws IOException {
+        Long hash = known.remove(path.toString());
+        if (hash != null) {
+            out.write('-', hash, path.toString());
+        }
+        Map<String, Long> below = below(path);
+        for (Map.Entry<String, Long> entry : below.entrySet()) {
+            out.write('-', entry.getValue(), entry.getKey());
+        }
+        below.clear();
+    }
+
+    // known files under dir: their paths start with dir and a separator, the range ends at the next char after it
+    private NavigableMap<String, Long> below(Path dir) {
+        String separator = dir.getFileSystem().getSeparator();
+        String prefix = dir.toString().endsWith(separator) ? dir.toString() : dir + separator;
+        String end = prefix.substring(0, prefix.length() - 1) + (char) (separator.charAt(0) + 1);
+        return known.subMap(prefix, true, end, false);
+    }
+
+}
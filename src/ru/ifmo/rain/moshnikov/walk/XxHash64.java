@@ -0,0 +1,127 @@
+package ru.ifmo.rain.moshnikov.walk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// xxHash64 with seed 0: four independent lanes eat a 32-byte stripe as four longs per step
+class XxHash64 implements HashAlgorithm {
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE = 32;
+
+    @Override
+    public String name() {
+        return "xxh64";
+    }
+
+    @Override
+    public int bits() {
+        return 64;
+    }
+
+    @Override
+    public State newState() {
+        return new XxState();
+    }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * P2, 31) * P1;
+    }
+
+    private static long merge(long acc, long v) {
+        return (acc ^ round(0, v)) * P1 + P4;
+    }
+
+    private static class XxState implements State {
+
+        // bytes of an incomplete stripe carried over between update calls
+        private final ByteBuffer tail = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+        private long v1, v2, v3, v4;
+        private long length;
+
+        private XxState() {
+            reset();
+        }
+
+        @Override
+        public void reset() {
+            v1 = P1 + P2;
+            v2 = P2;
+            v3 = 0;
+            v4 = -P1;
+            length = 0;
+            tail.clear();
+        }
+
+        @Override
+        public void update(ByteBuffer bytes) {
+            length += bytes.remaining();
+            if (tail.position() > 0) {
+                while (tail.hasRemaining() && bytes.hasRemaining()) {
+                    tail.put(bytes.get());
+                }
+                if (tail.hasRemaining()) {
+                    return;
+                }
+                tail.flip();
+                stripe(tail);
+                tail.clear();
+            }
+
+            ByteOrder order = bytes.order();
+            bytes.order(ByteOrder.LITTLE_ENDIAN);
+            while (bytes.remaining() >= STRIPE) {
+                stripe(bytes);
+            }
+            bytes.order(order);
+            tail.put(bytes);
+        }
+
+        private void stripe(ByteBuffer bytes) {
+            v1 = round(v1, bytes.getLong());
+            v2 = round(v2, bytes.getLong());
+            v3 = round(v3, bytes.getLong());
+            v4 = round(v4, bytes.getLong());
+        }
+
+        @Override
+        public long digest() {
+            long h;
+            if (length >= STRIPE) {
+                h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+                h = merge(h, v1);
+                h = merge(h, v2);
+                h = merge(h, v3);
+                h = merge(h, v4);
+            } else {
+                h = P5;
+            }
+            h += length;
+
+            ByteBuffer rest = tail.duplicate().order(ByteOrder.LITTLE_ENDIAN).flip();
+            while (rest.remaining() >= 8) {
+                h = Long.rotateLeft(h ^ round(0, rest.getLong()), 27) * P1 + P4;
+            }
+            if (rest.remaining() >= 4) {
+                h = Long.rotateLeft(h ^ (rest.getInt() & 0xffffffffL) * P1, 23) * P2 + P3;
+            }
+            while (rest.hasRemaining()) {
+                h = Long.rotateLeft(h ^ (rest.get() & 0xff) * P5, 11) * P1;
+            }
+
+            h ^= h >>> 33;
+            h *= P2;
+            h ^= h >>> 29;
+            h *= P3;
+            h ^= h >>> 32;
+            return h;
+        }
+
+    }
+
+}